@@ -0,0 +1,31 @@
+package ru.tyabutov.searchengine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Тестовые страницы для бенчмарков: шаблон страницы сайта с навигацией,
+ * скриптами и подвалом, в который подставляется статья нужное число раз.
+ */
+public final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    public static String html(int articleCopies) {
+        return read("fixtures/page.html").replace("${content}", read("fixtures/article.html").repeat(articleCopies));
+    }
+
+    private static String read(String name) {
+        try (InputStream in = Fixtures.class.getClassLoader().getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IllegalStateException("Не найден файл " + name);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
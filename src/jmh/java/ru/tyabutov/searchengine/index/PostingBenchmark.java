@@ -0,0 +1,148 @@
+package ru.tyabutov.searchengine.index;
+
+import org.openjdk.jmh.annotations.*;
+import ru.tyabutov.searchengine.config.SearchSettings;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пересечение и ранжирование списков страниц на синтетических данных.
+ * Частая лемма встречается на половине страниц, редкая - в skew раз реже,
+ * средняя - между ними. Одни и те же списки читаются из резидентного индекса
+ * и из сегмента, отображённого в память. Отбор 20 лучших страниц сравнивается
+ * при полной оценке кандидатов и с отсечением по верхним границам.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PostingBenchmark {
+    private static final int SITE_ID = 1;
+    private static final List<String> LEMMAS = List.of("частый", "средний", "редкий");
+
+    @Param({"10000", "1000000"})
+    private int pages;
+
+    @Param({"1", "10", "100"})
+    private int skew;
+
+    @Param({"RANK_SUM", "BM25"})
+    private String scoring;
+
+    private InvertedIndex invertedIndex;
+    private IndexSegment segment;
+    private Path segmentPath;
+    private byte[][] terms;
+    private int[] candidates;
+    private float[] relevance;
+    private Scorer scorer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        invertedIndex = new InvertedIndex(null, new SearchSettings());
+        Random random = new Random(42);
+        double[] densities = {0.5, 0.5 / Math.sqrt(skew), 0.5 / skew};
+        for (int pageId = 1; pageId <= pages; pageId++) {
+            for (int i = 0; i < LEMMAS.size(); i++) {
+                if (random.nextDouble() < densities[i]) {
+                    invertedIndex.add(SITE_ID, LEMMAS.get(i), pageId, 1 + random.nextInt(20));
+                }
+            }
+        }
+
+        segmentPath = Files.createTempFile("benchmark", ".seg");
+        terms = SegmentIndex.toTerms(LEMMAS.stream().sorted().toList());
+        try (SegmentWriter writer = new SegmentWriter(segmentPath, SITE_ID)) {
+            for (byte[] term : terms) {
+                writer.startLemma(term);
+                PostingList.Snapshot snapshot = invertedIndex.sitePostings(SITE_ID)
+                        .get(new String(term, StandardCharsets.UTF_8)).snapshot();
+                for (int i = 0; i < snapshot.pageIds().length; i++) {
+                    writer.addPosting(snapshot.pageIds()[i], snapshot.ranks()[i]);
+                }
+            }
+            for (int pageId = 1; pageId <= pages; pageId++) {
+                writer.addPage(pageId, 1);
+            }
+            segment = IndexSegment.open(writer.finish());
+        }
+
+        scorer = scoring.equals("BM25") ? new Bm25Scorer(1.2f, 0.75f) : new RankSumScorer();
+        candidates = invertedIndex.findPages(SITE_ID, List.of("частый"));
+        PostingList.Snapshot frequent = invertedIndex.sitePostings(SITE_ID).get("частый").snapshot();
+        relevance = Arrays.copyOf(frequent.ranks(), candidates.length);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(segmentPath);
+    }
+
+    @Benchmark
+    public int[] memoryFindPages() {
+        return invertedIndex.findPages(SITE_ID, LEMMAS);
+    }
+
+    @Benchmark
+    public int[] segmentFindPages() {
+        return SegmentIndex.intersect(segment, terms, pageId -> false);
+    }
+
+    @Benchmark
+    public int[] memoryScoreAll() {
+        int[] pageIds = invertedIndex.findPages(SITE_ID, LEMMAS);
+        RankingView view = invertedIndex.rankingView(SITE_ID, LEMMAS);
+        int pageCount = view.pageCount();
+        double averagePageLength = view.totalPageLength() / Math.max(1, pageCount);
+        Scorer.TermScorer[] termScorers = new Scorer.TermScorer[LEMMAS.size()];
+        for (int term = 0; term < termScorers.length; term++) {
+            termScorers[term] = scorer.termScorer(view.documentFrequency(term), pageCount, averagePageLength);
+        }
+        TopK topK = new TopK(20);
+        for (int pageId : pageIds) {
+            float pageLength = view.pageLength(pageId);
+            float score = 0;
+            for (int term = 0; term < termScorers.length; term++) {
+                score += termScorers[term].score(view.rank(term, pageId), pageLength);
+            }
+            topK.offer(pageId, score);
+        }
+        return topK.sortedIds();
+    }
+
+    @Benchmark
+    public int[] memoryMaxScore() {
+        int[] pageIds = invertedIndex.findPages(SITE_ID, LEMMAS);
+        TopK topK = new TopK(20);
+        MaxScoreEvaluator.evaluate(invertedIndex.rankingView(SITE_ID, LEMMAS), pageIds, scorer, topK);
+        return topK.sortedIds();
+    }
+
+    @Benchmark
+    public long segmentScan() {
+        IndexSegment.Cursor cursor = segment.cursor(segment.find(terms[terms.length - 1]));
+        long sum = 0;
+        while (cursor.next()) {
+            sum += cursor.pageId();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int[] topK() {
+        TopK topK = new TopK(20);
+        for (int i = 0; i < candidates.length; i++) {
+            topK.offer(candidates[i], relevance[i]);
+        }
+        return topK.sortedIds();
+    }
+}
@@ -0,0 +1,80 @@
+package ru.tyabutov.searchengine.model;
+
+import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.tyabutov.searchengine.Fixtures;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Лемматизация страницы: подсчёт лемм по HTML, смещения лемм в тексте,
+ * выделение видимых полей страницы, отпечаток SimHash текста и разбор отдельных слов с кешем и без него.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LemmaBenchmark {
+    private static final Set<String> EXCLUDED_TAGS = Set.of("script", "style", "noscript", "template", "svg",
+            "nav", "footer", "aside", "form");
+
+    @Param({"1", "8"})
+    private int articleCopies;
+
+    @Param({"0", "200000"})
+    private long cacheSize;
+
+    private LemmaCreator lemmaCreator;
+    private String html;
+    private Document document;
+    private String text;
+    private String[] words;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        lemmaCreator = new LemmaCreator(new RussianLuceneMorphology(), cacheSize);
+        html = Fixtures.html(articleCopies);
+        document = Jsoup.parse(html);
+        text = document.text();
+        List<String> wordList = new ArrayList<>();
+        lemmaCreator.forEachWord(text, (word, start, end) -> wordList.add(word));
+        words = wordList.toArray(new String[0]);
+    }
+
+    @Benchmark
+    public Map<String, Integer> getLemmas() {
+        return lemmaCreator.getLemmas(html);
+    }
+
+    @Benchmark
+    public Map<String, int[]> getLemmaOffsets() {
+        return lemmaCreator.getLemmaOffsets(text);
+    }
+
+    @Benchmark
+    public PageFields extractFields() {
+        return PageFields.extract(document, EXCLUDED_TAGS);
+    }
+
+    @Benchmark
+    public long simHash() {
+        return SimHash.fingerprint(text);
+    }
+
+    @Benchmark
+    public void takeLemmaFromWord(Blackhole blackhole) {
+        for (String word : words) {
+            blackhole.consume(lemmaCreator.takeLemmaFromWord(word));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package ru.tyabutov.searchengine.services;
+
+import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
+import org.jsoup.Jsoup;
+import org.openjdk.jmh.annotations.*;
+import ru.tyabutov.searchengine.Fixtures;
+import ru.tyabutov.searchengine.index.TokenOffsets;
+import ru.tyabutov.searchengine.model.ContentCodec;
+import ru.tyabutov.searchengine.model.LemmaCreator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Построение сниппета: только выбор окна по готовым смещениям
+ * и полный путь выдачи - распаковка текста, декодирование смещений, выбор окна.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SnippetBenchmark {
+
+    @Param({"1", "8"})
+    private int articleCopies;
+
+    @Param({"1", "3"})
+    private int queryLemmas;
+
+    private String text;
+    private byte[] compressedText;
+    private byte[] lemmaOffsets;
+    private List<String> queryWords;
+    private List<int[]> offsets;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        LemmaCreator lemmaCreator = new LemmaCreator(new RussianLuceneMorphology(), 0);
+        text = Jsoup.parse(Fixtures.html(articleCopies)).text();
+        compressedText = ContentCodec.compress(text);
+        Map<String, int[]> allOffsets = lemmaCreator.getLemmaOffsets(text);
+        lemmaOffsets = TokenOffsets.encode(allOffsets);
+        queryWords = allOffsets.entrySet().stream()
+                .filter(entry -> entry.getKey().length() > 3)
+                .sorted(Comparator.comparingInt((Map.Entry<String, int[]> entry) -> entry.getValue().length)
+                        .reversed().thenComparing(Map.Entry::getKey))
+                .limit(queryLemmas)
+                .map(Map.Entry::getKey)
+                .toList();
+        offsets = new ArrayList<>(TokenOffsets.decode(lemmaOffsets, queryWords).values());
+    }
+
+    @Benchmark
+    public String buildSnippet() {
+        return IndexingServiceImpl.buildSnippet(text, offsets);
+    }
+
+    @Benchmark
+    public String generateSnippet() {
+        Map<String, int[]> decoded = TokenOffsets.decode(lemmaOffsets, queryWords);
+        return IndexingServiceImpl.buildSnippet(ContentCodec.decompress(compressedText),
+                new ArrayList<>(decoded.values()));
+    }
+}
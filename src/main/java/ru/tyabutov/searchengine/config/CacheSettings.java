@@ -0,0 +1,16 @@
+package ru.tyabutov.searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "cache-settings")
+public class CacheSettings {
+    private long lemmaCacheSize = 200_000;
+    private long searchCacheSize = 1_000;
+    private long searchCacheTtlSeconds = 300;
+}
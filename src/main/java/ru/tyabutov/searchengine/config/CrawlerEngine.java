@@ -0,0 +1,5 @@
+package ru.tyabutov.searchengine.config;
+
+public enum CrawlerEngine {
+    FORK_JOIN, FRONTIER
+}
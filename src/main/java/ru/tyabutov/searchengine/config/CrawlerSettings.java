@@ -0,0 +1,31 @@
+package ru.tyabutov.searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "crawler-settings")
+public class CrawlerSettings {
+    private boolean bloomFilterEnabled = true;
+    private CrawlerEngine engine = CrawlerEngine.FORK_JOIN;
+    private CrawlMode mode = CrawlMode.FULL;
+    private int maxInFlight = 64;
+    private int frontierCapacity = 100_000;
+    private double bloomFalsePositiveRate = 0.01;
+    private double requestsPerSecond = 2;
+    private int burst = 2;
+    private long crawlDelayMs = 0;
+    private int maxBodySize = 2 * 1024 * 1024;
+    private List<String> allowedContentTypes = List.of("text/html", "application/xhtml+xml");
+    private String checkpointDir = "crawl-checkpoints";
+    private long checkpointIntervalMs = 10_000;
+    private List<String> strippedQueryParams = List.of("utm_*", "gclid", "yclid", "fbclid", "_openstat",
+            "sessionid", "jsessionid", "phpsessid", "sid");
+    private int nearDuplicateDistance = 3;
+}
@@ -0,0 +1,5 @@
+package ru.tyabutov.searchengine.config;
+
+public enum ScoringModel {
+    RANK_SUM, BM25
+}
@@ -0,0 +1,27 @@
+package ru.tyabutov.searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "search-settings")
+public class SearchSettings {
+    private int queryThreads = 8;
+    private int maxInFlight = 32;
+    private long queueTimeoutMs = 500;
+    private long queryTimeoutMs = 10_000;
+    private IndexBackend backend = IndexBackend.MEMORY;
+    private String segmentsDir = "segments";
+    private int maxSegmentsPerSite = 4;
+    private long mergeIntervalMs = 60_000;
+    private ScoringModel scoring = ScoringModel.BM25;
+    private float bm25K1 = 1.2f;
+    private float bm25B = 0.75f;
+    private double maxLemmaPageShare = 0.8;
+    private int siteThreads = 8;
+    private long siteTimeoutMs = 2_000;
+}
@@ -0,0 +1,20 @@
+package ru.tyabutov.searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "tokenizer-settings")
+public class TokenizerSettings {
+    private List<String> excludedTags = List.of("script", "style", "noscript", "template", "svg",
+            "nav", "footer", "aside", "form");
+    private float titleWeight = 3;
+    private float headingWeight = 2;
+    private float bodyWeight = 1;
+}
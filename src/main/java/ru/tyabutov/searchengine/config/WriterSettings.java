@@ -0,0 +1,20 @@
+package ru.tyabutov.searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "writer-settings")
+public class WriterSettings {
+    private int batchSize = 2000;
+    private long flushIntervalMs = 1000;
+    private int queueCapacity = 500;
+    private int deleteChunkSize = 1000;
+    private int writeAttempts = 3;
+    private long retryBackoffMs = 500;
+    private boolean dropLegacyPageColumns = false;
+}
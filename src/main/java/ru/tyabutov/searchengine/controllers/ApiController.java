@@ -1,13 +1,16 @@
 package ru.tyabutov.searchengine.controllers;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import ru.tyabutov.searchengine.dto.statistics.StatisticsResponse;
 import ru.tyabutov.searchengine.services.IndexingService;
+import ru.tyabutov.searchengine.services.SearchRejectedException;
 import ru.tyabutov.searchengine.services.StatisticsService;
 
 import java.util.Map;
@@ -53,8 +56,15 @@ public class ApiController {
     public ResponseEntity<Map<String, Object>> search(String query,
                                  String site,
                                  int offset,
-                                 int limit) {
+                                 int limit,
+                                 boolean explain) {
         return ResponseEntity.of(
-                Optional.ofNullable(indexingService.search(query, site, offset, limit)));
+                Optional.ofNullable(indexingService.search(query, site, offset, limit, explain)));
+    }
+
+    @ExceptionHandler(SearchRejectedException.class)
+    public ResponseEntity<Map<String, Object>> searchRejected(SearchRejectedException exception) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(Map.of("result", "false", "message", exception.getMessage()));
     }
 }
@@ -0,0 +1,28 @@
+package ru.tyabutov.searchengine.dto.indexing;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * План поиска по одному сайту, возвращаемый при explain=true.
+ * intersected - леммы, по спискам которых отбираются кандидаты, от самой редкой;
+ * deferred - слишком частые леммы, которые только добавляют вклад в релевантность.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+public class QueryPlan {
+    private final String site;
+    private final int pageCount;
+    private final double maxLemmaPageShare;
+    private final List<LemmaPlan> intersected;
+    private final List<LemmaPlan> deferred;
+    private int candidates;
+    private int pruned;
+
+    public record LemmaPlan(String lemma, int documentFrequency, double pageShare) {
+    }
+}
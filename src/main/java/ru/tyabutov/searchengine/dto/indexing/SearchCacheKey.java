@@ -0,0 +1,6 @@
+package ru.tyabutov.searchengine.dto.indexing;
+
+import java.util.List;
+
+public record SearchCacheKey(List<String> lemmas, String site, int offset, int limit, List<Long> generations) {
+}
@@ -3,9 +3,8 @@ package ru.tyabutov.searchengine.dto.indexing;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.Setter;
+import ru.tyabutov.searchengine.index.TopK;
 import ru.tyabutov.searchengine.model.LemmaEntity;
-import ru.tyabutov.searchengine.model.PageEntity;
-import ru.tyabutov.searchengine.model.SiteEntity;
 
 import java.util.*;
 
@@ -13,8 +12,10 @@ import java.util.*;
 @Setter
 @AllArgsConstructor
 public class SearchContext {
-    Set<PageEntity> combinedRelevantPages;
     List<LemmaEntity> combinedFilteredLemmas;
     List<String> queryWords;
-    Map<PageEntity, SiteEntity> pageToSiteMap;
+    TopK topK;
+    int matchCount;
+    List<QueryPlan> plans;
+    List<String> timedOutSites;
 }
@@ -17,4 +17,5 @@ public class DetailedStatisticsItem {
     private String error;
     private int pages;
     private int lemmas;
+    private int duplicates;
 }
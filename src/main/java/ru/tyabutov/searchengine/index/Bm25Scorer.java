@@ -0,0 +1,24 @@
+package ru.tyabutov.searchengine.index;
+
+/**
+ * Okapi BM25: idf леммы по числу страниц с ней среди всех сайтов поиска, чтобы оценки
+ * разных сайтов были сравнимы в общей выдаче, и нормализация ранга
+ * по отношению длины страницы к средней длине страниц её сайта.
+ */
+public class Bm25Scorer implements Scorer {
+    private final float k1;
+    private final float b;
+
+    public Bm25Scorer(float k1, float b) {
+        this.k1 = k1;
+        this.b = b;
+    }
+
+    @Override
+    public TermScorer termScorer(int documentFrequency, int pageCount, double averagePageLength) {
+        float idf = (float) Math.log(1 + (pageCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+        float lengthWeight = averagePageLength > 0 ? (float) (b / averagePageLength) : 0;
+        return (rank, pageLength) -> rank == 0 ? 0
+                : idf * rank * (k1 + 1) / (rank + k1 * (1 - b + lengthWeight * pageLength));
+    }
+}
@@ -0,0 +1,31 @@
+package ru.tyabutov.searchengine.index;
+
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Счётчики поколений индекса по адресам сайтов.
+ * Любое изменение страниц сайта увеличивает его поколение, поэтому закешированные
+ * результаты поиска со старым поколением в ключе больше не находятся.
+ */
+@Component
+public class IndexGenerations {
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    public void bump(String siteUrl) {
+        generations.computeIfAbsent(siteUrl, url -> new AtomicLong()).incrementAndGet();
+    }
+
+    public long get(String siteUrl) {
+        AtomicLong generation = generations.get(siteUrl);
+        return generation == null ? 0 : generation.get();
+    }
+
+    public List<Long> get(List<String> siteUrls) {
+        return siteUrls.stream().map(this::get).toList();
+    }
+}
@@ -0,0 +1,243 @@
+package ru.tyabutov.searchengine.index;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static ru.tyabutov.searchengine.index.SegmentWriter.*;
+
+/**
+ * Неизменяемый сегмент индекса, отображённый в память.
+ * Все чтения идут абсолютными обращениями к буферу, поэтому сегмент
+ * можно читать из нескольких потоков без блокировок и без копирования на кучу.
+ */
+public final class IndexSegment {
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int siteId;
+    private final int lemmaCount;
+    private final int pageCount;
+    private final int maxPageId;
+    private final int dictionaryOffset;
+    private final int pagesOffset;
+    private final double totalPageLength;
+
+    private IndexSegment(Path path, MappedByteBuffer buffer) {
+        this.path = path;
+        this.buffer = buffer;
+        this.siteId = buffer.getInt(8);
+        this.lemmaCount = buffer.getInt(12);
+        this.pageCount = buffer.getInt(16);
+        this.maxPageId = buffer.getInt(20);
+        this.dictionaryOffset = (int) buffer.getLong(24);
+        this.pagesOffset = (int) buffer.getLong(32);
+        double total = 0;
+        for (int i = 0; i < pageCount; i++) {
+            total += pageLengthAt(i);
+        }
+        this.totalPageLength = total;
+    }
+
+    public static IndexSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Некорректный размер сегмента " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Неизвестный формат сегмента " + path);
+            }
+            return new IndexSegment(path, buffer);
+        }
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public int siteId() {
+        return siteId;
+    }
+
+    public int lemmaCount() {
+        return lemmaCount;
+    }
+
+    public int pageCount() {
+        return pageCount;
+    }
+
+    public int maxPageId() {
+        return maxPageId;
+    }
+
+    /**
+     * Сумма длин страниц сегмента, включая помеченные удалёнными до слияния.
+     */
+    public double totalPageLength() {
+        return totalPageLength;
+    }
+
+    /**
+     * Возвращает номер леммы в словаре или -1, если её нет в сегменте.
+     */
+    public int find(byte[] lemma) {
+        int low = 0;
+        int high = lemmaCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(middle, lemma);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    public byte[] lemmaBytes(int slot) {
+        int entry = dictionaryOffset + slot * DICTIONARY_ENTRY_SIZE;
+        byte[] lemma = new byte[buffer.getInt(entry + 8)];
+        buffer.get((int) buffer.getLong(entry), lemma);
+        return lemma;
+    }
+
+    public String lemma(int slot) {
+        return new String(lemmaBytes(slot), StandardCharsets.UTF_8);
+    }
+
+    public int documentFrequency(int slot) {
+        return buffer.getInt(dictionaryOffset + slot * DICTIONARY_ENTRY_SIZE + 12);
+    }
+
+    public float maxRank(int slot) {
+        return buffer.getFloat(dictionaryOffset + slot * DICTIONARY_ENTRY_SIZE + 24);
+    }
+
+    public Cursor cursor(int slot) {
+        int entry = dictionaryOffset + slot * DICTIONARY_ENTRY_SIZE;
+        return new Cursor((int) buffer.getLong(entry + 16), buffer.getInt(entry + 12));
+    }
+
+    public int pageId(int index) {
+        return buffer.getInt(pagesOffset + index * PAGE_ENTRY_SIZE);
+    }
+
+    public float pageLengthAt(int index) {
+        return buffer.getFloat(pagesOffset + index * PAGE_ENTRY_SIZE + 4);
+    }
+
+    public boolean containsPage(int pageId) {
+        return findPage(pageId) >= 0;
+    }
+
+    /**
+     * Длина страницы из метаданных сегмента или NaN, если страницы в сегменте нет.
+     */
+    public float pageLength(int pageId) {
+        int index = findPage(pageId);
+        return index < 0 ? Float.NaN : pageLengthAt(index);
+    }
+
+    private int findPage(int pageId) {
+        int low = 0;
+        int high = pageCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int value = pageId(middle);
+            if (value < pageId) {
+                low = middle + 1;
+            } else if (value > pageId) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private int compare(int slot, byte[] lemma) {
+        int entry = dictionaryOffset + slot * DICTIONARY_ENTRY_SIZE;
+        int offset = (int) buffer.getLong(entry);
+        int length = buffer.getInt(entry + 8);
+        int common = Math.min(length, lemma.length);
+        for (int i = 0; i < common; i++) {
+            int comparison = Byte.compareUnsigned(buffer.get(offset + i), lemma[i]);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return length - lemma.length;
+    }
+
+    /**
+     * Последовательное чтение списка страниц леммы прямо из отображённого файла.
+     */
+    public final class Cursor {
+        private int position;
+        private int remaining;
+        private int pageId;
+        private float rank;
+        private boolean exhausted;
+
+        private Cursor(int position, int size) {
+            this.position = position;
+            this.remaining = size;
+        }
+
+        public boolean next() {
+            if (remaining == 0) {
+                exhausted = true;
+                return false;
+            }
+            remaining--;
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get(position++);
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            pageId += delta;
+            rank = buffer.getFloat(position);
+            position += 4;
+            return true;
+        }
+
+        /**
+         * Сдвигает курсор на первую страницу с id не меньше target.
+         * Возвращает false, если таких страниц не осталось.
+         */
+        public boolean advance(int target) {
+            if (exhausted) {
+                return false;
+            }
+            while (pageId < target) {
+                if (!next()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public int pageId() {
+            return pageId;
+        }
+
+        public float rank() {
+            return rank;
+        }
+
+        public int remaining() {
+            return remaining;
+        }
+    }
+}
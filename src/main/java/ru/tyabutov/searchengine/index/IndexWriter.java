@@ -0,0 +1,277 @@
+package ru.tyabutov.searchengine.index;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.tyabutov.searchengine.config.WriterSettings;
+import ru.tyabutov.searchengine.model.CrawlMetrics;
+import ru.tyabutov.searchengine.model.PageContentEntity;
+import ru.tyabutov.searchengine.model.PageEntity;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Отложенная запись результатов индексации.
+ * Задачи обхода кладут страницы с рангами лемм в ограниченную очередь,
+ * отдельный поток собирает их в пакеты и пишет в БД многострочными JDBC-батчами.
+ * Когда очередь заполнена, задачи обхода ждут (backpressure).
+ * <p>
+ * Id страниц назначает приложение из счётчика, начатого с MAX(id) при старте, чтобы строки
+ * page, page_content и index одной страницы вставлялись одним пакетом без чтения сгенерированных ключей.
+ * Поэтому таблицы page и lemma должен писать только один экземпляр приложения:
+ * второй экземпляр или внешняя запись в эти таблицы во время работы приведут к конфликтам ключей.
+ */
+@Component
+public class IndexWriter {
+    private static final String INSERT_PAGE =
+            "INSERT INTO page (id, site_id, path, code, title, etag, last_modified, content_hash, simhash) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_PAGE_CONTENT =
+            "INSERT INTO page_content (page_id, content, charset, text, lemma_offsets) VALUES (?, ?, ?, ?, ?)";
+    private static final String UPSERT_LEMMA =
+            "INSERT INTO lemma (id, site_id, lemma, frequency) VALUES (?, ?, ?, ?) " +
+                    "ON DUPLICATE KEY UPDATE frequency = frequency + VALUES(frequency)";
+    private static final String INSERT_INDEX =
+            "INSERT INTO `index` (page_id, lemma_id, `rank`) VALUES (?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final InvertedIndex invertedIndex;
+    private final LemmaDictionary lemmaDictionary;
+    private final IndexGenerations indexGenerations;
+    private final WriterSettings settings;
+    private final CrawlMetrics metrics;
+
+    private final BlockingQueue<Object> queue;
+    private final AtomicInteger pageIds = new AtomicInteger();
+    private Thread writerThread;
+    private volatile boolean stopped;
+
+    private record PageWrite(PageEntity page, PageContentEntity content,
+                             Map<String, Float> ranks, Map<String, Integer> lemmaIds) {
+    }
+
+    private record FlushRequest(CompletableFuture<Void> done) {
+    }
+
+    public IndexWriter(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                       InvertedIndex invertedIndex, LemmaDictionary lemmaDictionary,
+                       IndexGenerations indexGenerations, WriterSettings settings, CrawlMetrics metrics) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.invertedIndex = invertedIndex;
+        this.lemmaDictionary = lemmaDictionary;
+        this.indexGenerations = indexGenerations;
+        this.settings = settings;
+        this.metrics = metrics;
+        this.queue = new ArrayBlockingQueue<>(settings.getQueueCapacity());
+        metrics.trackWriterQueue(queue);
+    }
+
+    @PostConstruct
+    public void start() {
+        Integer maxPageId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM page", Integer.class);
+        pageIds.set(maxPageId == null ? 0 : maxPageId);
+        writerThread = new Thread(this::writeLoop, "index-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        flush();
+        stopped = true;
+        writerThread.interrupt();
+    }
+
+    /**
+     * Назначает странице id, находит id её лемм в словаре сайта
+     * и ставит страницу в очередь на запись вместе с рангами лемм.
+     * Блокирует вызывающий поток, если очередь заполнена.
+     */
+    public void write(PageEntity page, PageContentEntity content, Map<String, Float> ranks)
+            throws InterruptedException {
+        page.setId(pageIds.incrementAndGet());
+        content.setPageId(page.getId());
+        Map<String, Integer> lemmaIds = new HashMap<>();
+        for (String lemma : ranks.keySet()) {
+            lemmaIds.put(lemma, lemmaDictionary.lemmaId(page.getSite().getId(), lemma));
+        }
+        queue.put(new PageWrite(page, content, ranks, lemmaIds));
+    }
+
+    /**
+     * Дожидается записи в БД всего, что было поставлено в очередь до вызова.
+     * Возвращает false, если дождаться не удалось или после прошлого flush какой-то пакет не записался.
+     */
+    public boolean flush() {
+        if (writerThread == null || !writerThread.isAlive()) {
+            return false;
+        }
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        try {
+            queue.put(new FlushRequest(done));
+            done.get();
+            return true;
+        } catch (Exception e) {
+            System.out.println("Ошибка flush: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void writeLoop() {
+        List<PageWrite> batch = new ArrayList<>();
+        int batchRows = 0;
+        long deadline = System.currentTimeMillis() + settings.getFlushIntervalMs();
+        boolean failedSinceFlush = false;
+        while (!stopped) {
+            try {
+                Object item = queue.poll(Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                if (item instanceof PageWrite pageWrite) {
+                    batch.add(pageWrite);
+                    batchRows += 1 + pageWrite.ranks().size();
+                }
+                boolean flushRequested = item instanceof FlushRequest;
+                if (flushRequested || batchRows >= settings.getBatchSize()
+                        || System.currentTimeMillis() >= deadline) {
+                    failedSinceFlush |= !writeBatch(batch);
+                    batch.clear();
+                    batchRows = 0;
+                    deadline = System.currentTimeMillis() + settings.getFlushIntervalMs();
+                }
+                if (flushRequested) {
+                    CompletableFuture<Void> done = ((FlushRequest) item).done();
+                    if (failedSinceFlush) {
+                        done.completeExceptionally(new IllegalStateException("Часть страниц не записана в БД"));
+                    } else {
+                        done.complete(null);
+                    }
+                    failedSinceFlush = false;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Пишет пакет, повторяя попытку до writeAttempts раз с растущей паузой.
+     * Если пакет так и не записался, его страницы отбрасываются; их вклад в частоты лемм
+     * пишется только вместе с ними, поэтому frequency учитывает лишь сохранённые страницы.
+     */
+    private boolean writeBatch(List<PageWrite> batch) throws InterruptedException {
+        if (batch.isEmpty()) {
+            return true;
+        }
+        try {
+            for (int attempt = 1; attempt <= settings.getWriteAttempts(); attempt++) {
+                if (tryWriteBatch(batch)) {
+                    return true;
+                }
+                if (attempt < settings.getWriteAttempts()) {
+                    Thread.sleep(settings.getRetryBackoffMs() * attempt);
+                }
+            }
+        } catch (InterruptedException e) {
+            discard(batch);
+            throw e;
+        }
+        discard(batch);
+        return false;
+    }
+
+    private void discard(List<PageWrite> batch) {
+        metrics.recordDropped(batch.size());
+        System.out.println("Ошибка writeBatch: не записано страниц: " + batch.size());
+    }
+
+    private boolean tryWriteBatch(List<PageWrite> batch) {
+        List<Object[]> lemmaDeltas = lemmaDeltas(batch);
+        try {
+            long start = System.nanoTime();
+            transactionTemplate.executeWithoutResult(status -> {
+                insertPages(batch);
+                batchUpdate(UPSERT_LEMMA, lemmaDeltas);
+                insertIndices(batch);
+            });
+            int indexRows = batch.stream().mapToInt(pageWrite -> pageWrite.ranks().size()).sum();
+            metrics.recordWrite(System.nanoTime() - start, batch.size(),
+                    2 * batch.size() + lemmaDeltas.size() + indexRows);
+
+            Set<String> siteUrls = new HashSet<>();
+            for (PageWrite pageWrite : batch) {
+                PageEntity page = pageWrite.page();
+                invertedIndex.addPage(page.getSite().getId(), page.getId(), pageWrite.ranks());
+                metrics.recordIndexed(page.getSite());
+                siteUrls.add(page.getSite().getUrl());
+            }
+            siteUrls.forEach(indexGenerations::bump);
+            return true;
+        } catch (Exception e) {
+            metrics.recordError("write", e);
+            System.out.println("Ошибка writeBatch: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Приращения частот лемм только по страницам пакета в виде строк (id, site_id, lemma, delta):
+     * страницы, ещё ждущие в очереди, учитываются своими пакетами.
+     * Леммы удалённого за это время сайта не пишутся.
+     */
+    private List<Object[]> lemmaDeltas(List<PageWrite> batch) {
+        Map<Integer, Object[]> deltas = new LinkedHashMap<>();
+        for (PageWrite pageWrite : batch) {
+            int siteId = pageWrite.page().getSite().getId();
+            pageWrite.lemmaIds().forEach((lemma, lemmaId) -> {
+                if (lemmaDictionary.isCurrent(siteId, lemma, lemmaId)) {
+                    Object[] row = deltas.computeIfAbsent(lemmaId, id -> new Object[]{id, siteId, lemma, 0L});
+                    row[3] = (Long) row[3] + 1;
+                }
+            });
+        }
+        return new ArrayList<>(deltas.values());
+    }
+
+    private void insertPages(List<PageWrite> batch) {
+        List<Object[]> rows = new ArrayList<>(batch.size());
+        List<Object[]> contentRows = new ArrayList<>(batch.size());
+        for (PageWrite pageWrite : batch) {
+            PageEntity page = pageWrite.page();
+            PageContentEntity content = pageWrite.content();
+            rows.add(new Object[]{page.getId(), page.getSite().getId(), page.getPath(), page.getCode(),
+                    page.getTitle(), page.getEtag(), page.getLastModified(), page.getContentHash(),
+                    page.getSimhash()});
+            contentRows.add(new Object[]{content.getPageId(), content.getContent(), content.getCharset(),
+                    content.getText(),
+                    content.getLemmaOffsets()});
+        }
+        batchUpdate(INSERT_PAGE, rows);
+        batchUpdate(INSERT_PAGE_CONTENT, contentRows);
+    }
+
+    private void insertIndices(List<PageWrite> batch) {
+        List<Object[]> rows = new ArrayList<>();
+        for (PageWrite pageWrite : batch) {
+            PageEntity page = pageWrite.page();
+            pageWrite.ranks().forEach((lemma, rank) ->
+                    rows.add(new Object[]{page.getId(), pageWrite.lemmaIds().get(lemma), rank}));
+        }
+        batchUpdate(INSERT_INDEX, rows);
+    }
+
+    private void batchUpdate(String sql, List<Object[]> rows) {
+        for (int from = 0; from < rows.size(); from += settings.getBatchSize()) {
+            jdbcTemplate.batchUpdate(sql, rows.subList(from, Math.min(rows.size(), from + settings.getBatchSize())));
+        }
+    }
+}
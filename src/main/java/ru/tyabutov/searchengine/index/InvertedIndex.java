@@ -0,0 +1,323 @@
+package ru.tyabutov.searchengine.index;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import ru.tyabutov.searchengine.config.IndexBackend;
+import ru.tyabutov.searchengine.config.SearchSettings;
+import ru.tyabutov.searchengine.repositories.IndexRepository;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Резидентный обратный индекс: для каждой пары (сайт, лемма)
+ * хранится отсортированный список id страниц с рангами.
+ * Загружается из таблицы index при старте и дополняется по мере индексации,
+ * поэтому пересечение страниц для поискового запроса не обращается к БД.
+ * При хранении индекса в сегментах содержит только страницы, ещё не сброшенные в сегмент.
+ */
+@Component
+@RequiredArgsConstructor
+public class InvertedIndex implements PostingSource {
+    private static final int LOAD_BATCH_SIZE = 50_000;
+    private static final PostingList.Snapshot EMPTY = new PostingList().snapshot();
+
+    private final IndexRepository indexRepository;
+    private final SearchSettings searchSettings;
+
+    private final Map<Integer, SiteIndex> sites = new ConcurrentHashMap<>();
+
+    /**
+     * Списки страниц одного сайта и суммы рангов его страниц.
+     * Страница добавляется и удаляется целиком под блокировкой сайта,
+     * поэтому снимок сайта и его отсоединение видят страницу либо полностью, либо никак.
+     */
+    static final class SiteIndex {
+        private final Map<String, PostingList> postings = new ConcurrentHashMap<>();
+        private final PostingList pageLengths = new PostingList();
+
+        private void add(String lemma, int pageId, float rank) {
+            postings.computeIfAbsent(lemma, l -> new PostingList()).add(pageId, rank);
+            pageLengths.increment(pageId, rank);
+        }
+
+        private synchronized void addPage(int pageId, Map<String, Float> ranks) {
+            ranks.forEach((lemma, rank) -> add(lemma, pageId, rank));
+        }
+
+        private synchronized void addAll(SiteIndex other) {
+            other.postings.forEach((lemma, postingList) -> {
+                PostingList.Snapshot snapshot = postingList.snapshot();
+                for (int i = 0; i < snapshot.pageIds().length; i++) {
+                    add(lemma, snapshot.pageIds()[i], snapshot.ranks()[i]);
+                }
+            });
+        }
+
+        /**
+         * Возвращает false, если страницы в индексе сайта не было.
+         */
+        synchronized boolean removePage(int pageId, Collection<String> lemmas) {
+            for (String lemma : lemmas) {
+                PostingList postingList = postings.get(lemma);
+                if (postingList != null) {
+                    postingList.remove(pageId);
+                }
+            }
+            return pageLengths.remove(pageId);
+        }
+
+        /**
+         * Согласованный снимок: леммы с непустыми списками и суммы рангов страниц.
+         */
+        synchronized Map<String, PostingList.Snapshot> snapshot() {
+            Map<String, PostingList.Snapshot> snapshot = new HashMap<>();
+            postings.forEach((lemma, postingList) -> {
+                if (postingList.size() > 0) {
+                    snapshot.put(lemma, postingList.snapshot());
+                }
+            });
+            return snapshot;
+        }
+
+        PostingList.Snapshot pageLengths() {
+            return pageLengths.snapshot();
+        }
+
+        int documentFrequency(String lemma) {
+            PostingList postingList = postings.get(lemma);
+            return postingList == null ? 0 : postingList.size();
+        }
+
+        int pageCount() {
+            return pageLengths.size();
+        }
+
+        /**
+         * Пересечение начинается с самого короткого списка и прекращается,
+         * как только не остаётся ни одного кандидата.
+         */
+        int[] findPages(Collection<String> lemmas) {
+            if (lemmas.isEmpty()) {
+                return new int[0];
+            }
+            List<int[]> lists = new ArrayList<>();
+            for (String lemma : lemmas) {
+                PostingList postingList = postings.get(lemma);
+                if (postingList == null) {
+                    return new int[0];
+                }
+                lists.add(postingList.pageIds());
+            }
+            lists.sort(Comparator.comparingInt(list -> list.length));
+
+            int[] result = lists.get(0);
+            for (int i = 1; i < lists.size() && result.length > 0; i++) {
+                result = intersect(result, lists.get(i));
+            }
+            return result;
+        }
+
+        RankingView rankingView(List<String> lemmas) {
+            PostingList.Snapshot[] terms = new PostingList.Snapshot[lemmas.size()];
+            for (int i = 0; i < terms.length; i++) {
+                PostingList postingList = postings.get(lemmas.get(i));
+                terms[i] = postingList == null ? EMPTY : postingList.snapshot();
+            }
+            return new MemoryView(terms, pageLengths.snapshot());
+        }
+    }
+
+    @PostConstruct
+    public void load() {
+        if (searchSettings.getBackend() == IndexBackend.SEGMENTS) {
+            return;
+        }
+        int lastId = 0;
+        List<Object[]> rows;
+        do {
+            rows = indexRepository.findPostingsAfter(lastId, PageRequest.of(0, LOAD_BATCH_SIZE));
+            for (Object[] row : rows) {
+                lastId = (Integer) row[0];
+                add((Integer) row[1], (String) row[2], (Integer) row[3], (Float) row[4]);
+            }
+        } while (rows.size() == LOAD_BATCH_SIZE);
+    }
+
+    public void add(int siteId, String lemma, int pageId, float rank) {
+        sites.computeIfAbsent(siteId, id -> new SiteIndex()).add(lemma, pageId, rank);
+    }
+
+    /**
+     * Добавление идёт внутри compute, поэтому не пересекается с отсоединением сайта.
+     */
+    public void addPage(int siteId, int pageId, Map<String, Float> ranks) {
+        sites.compute(siteId, (id, site) -> {
+            SiteIndex result = site == null ? new SiteIndex() : site;
+            result.addPage(pageId, ranks);
+            return result;
+        });
+    }
+
+    /**
+     * Атомарно забирает индекс сайта; новые страницы сайта попадут в новый пустой индекс.
+     */
+    SiteIndex detachSite(int siteId) {
+        return sites.remove(siteId);
+    }
+
+    /**
+     * Возвращает страницы отсоединённого индекса, если сбросить их не удалось.
+     */
+    void restoreSite(int siteId, SiteIndex detached) {
+        sites.compute(siteId, (id, site) -> {
+            if (site == null) {
+                return detached;
+            }
+            site.addAll(detached);
+            return site;
+        });
+    }
+
+    @Override
+    public void removePage(int siteId, int pageId, Collection<String> lemmas) {
+        SiteIndex site = sites.get(siteId);
+        if (site != null) {
+            site.removePage(pageId, lemmas);
+        }
+    }
+
+    @Override
+    public void removeSite(int siteId) {
+        sites.remove(siteId);
+    }
+
+    @Override
+    public int documentFrequency(int siteId, String lemma) {
+        SiteIndex site = sites.get(siteId);
+        return site == null ? 0 : site.documentFrequency(lemma);
+    }
+
+    @Override
+    public int pageCount(int siteId) {
+        SiteIndex site = sites.get(siteId);
+        return site == null ? 0 : site.pageCount();
+    }
+
+    public Map<String, PostingList> sitePostings(int siteId) {
+        SiteIndex site = sites.get(siteId);
+        return site == null ? Collections.emptyMap() : Collections.unmodifiableMap(site.postings);
+    }
+
+    @Override
+    public int[] findPages(int siteId, Collection<String> lemmas) {
+        SiteIndex site = sites.get(siteId);
+        return site == null ? new int[0] : site.findPages(lemmas);
+    }
+
+    @Override
+    public RankingView rankingView(int siteId, List<String> lemmas) {
+        SiteIndex site = sites.get(siteId);
+        return (site == null ? new SiteIndex() : site).rankingView(lemmas);
+    }
+
+    /**
+     * Ранги читаются из снимков списков; позиция поиска по каждой лемме
+     * только растёт, так как страницы запрашиваются по возрастанию id.
+     */
+    private static final class MemoryView implements RankingView {
+        private final PostingList.Snapshot[] terms;
+        private final int[] positions;
+        private final PostingList.Snapshot lengths;
+
+        private MemoryView(PostingList.Snapshot[] terms, PostingList.Snapshot lengths) {
+            this.terms = terms;
+            this.positions = new int[terms.length];
+            this.lengths = lengths;
+        }
+
+        @Override
+        public int termCount() {
+            return terms.length;
+        }
+
+        @Override
+        public int documentFrequency(int term) {
+            return terms[term].pageIds().length;
+        }
+
+        @Override
+        public float maxRank(int term) {
+            return terms[term].maxRank();
+        }
+
+        @Override
+        public int nextPage(int term, int target) {
+            int[] pageIds = terms[term].pageIds();
+            int position = Arrays.binarySearch(pageIds, positions[term], pageIds.length, target);
+            if (position < 0) {
+                position = -position - 1;
+            }
+            positions[term] = position;
+            return position < pageIds.length ? pageIds[position] : Integer.MAX_VALUE;
+        }
+
+        @Override
+        public float rank(int term, int pageId) {
+            int[] pageIds = terms[term].pageIds();
+            int position = Arrays.binarySearch(pageIds, positions[term], pageIds.length, pageId);
+            if (position < 0) {
+                positions[term] = -position - 1;
+                return 0;
+            }
+            positions[term] = position;
+            return terms[term].ranks()[position];
+        }
+
+        @Override
+        public float pageLength(int pageId) {
+            return lengths.rank(pageId);
+        }
+
+        @Override
+        public int pageCount() {
+            return lengths.pageIds().length;
+        }
+
+        @Override
+        public double totalPageLength() {
+            return lengths.totalRank();
+        }
+    }
+
+    /**
+     * Для каждой страницы короткого списка ищет её в длинном экспоненциальным шагом
+     * от предыдущей найденной позиции и затем бинарным поиском внутри шага,
+     * поэтому длинный список не просматривается целиком.
+     */
+    static int[] intersect(int[] smaller, int[] larger) {
+        int[] result = new int[Math.min(smaller.length, larger.length)];
+        int size = 0;
+        int low = 0;
+        for (int pageId : smaller) {
+            if (low >= larger.length) {
+                break;
+            }
+            int step = 1;
+            while (low + step < larger.length && larger[low + step] < pageId) {
+                step <<= 1;
+            }
+            int position = Arrays.binarySearch(larger, low + (step >> 1),
+                    Math.min(low + step + 1, larger.length), pageId);
+            if (position >= 0) {
+                result[size++] = pageId;
+                low = position + 1;
+            } else {
+                low = -position - 1;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+}
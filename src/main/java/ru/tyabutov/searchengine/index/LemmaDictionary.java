@@ -0,0 +1,62 @@
+package ru.tyabutov.searchengine.index;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Словарь лемм каждого сайта в памяти: лемма -> id.
+ * Словарь сайта читается из таблицы lemma один раз, новые леммы получают id без обращения к БД.
+ * Частоты здесь не копятся: IndexWriter считает приращения по страницам каждого пакета
+ * и записывает их пакетным upsert вместе с этими страницами.
+ * Id новых лемм, как и id страниц в IndexWriter, назначаются из счётчика в памяти,
+ * поэтому таблицу lemma пишет только один экземпляр приложения.
+ */
+@Component
+@RequiredArgsConstructor
+public class LemmaDictionary {
+    private final JdbcTemplate jdbcTemplate;
+
+    private final Map<Integer, Map<String, Integer>> sites = new ConcurrentHashMap<>();
+    private final AtomicInteger lemmaIds = new AtomicInteger();
+
+    @PostConstruct
+    public void init() {
+        Integer maxLemmaId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM lemma", Integer.class);
+        lemmaIds.set(maxLemmaId == null ? 0 : maxLemmaId);
+    }
+
+    /**
+     * Возвращает id леммы сайта, назначая новый, если лемма встретилась впервые.
+     */
+    public int lemmaId(int siteId, String lemma) {
+        return sites.computeIfAbsent(siteId, this::loadSite)
+                .computeIfAbsent(lemma, l -> lemmaIds.incrementAndGet());
+    }
+
+    /**
+     * Лемма с этим id всё ещё числится за сайтом, то есть сайт не удалён после её учёта.
+     */
+    public boolean isCurrent(int siteId, String lemma, int lemmaId) {
+        Map<String, Integer> siteLemmas = sites.get(siteId);
+        return siteLemmas != null && Integer.valueOf(lemmaId).equals(siteLemmas.get(lemma));
+    }
+
+    public void removeSite(int siteId) {
+        sites.remove(siteId);
+    }
+
+    private Map<String, Integer> loadSite(int siteId) {
+        Map<String, Integer> lemmas = new ConcurrentHashMap<>();
+        jdbcTemplate.query("SELECT id, lemma FROM lemma WHERE site_id = ?",
+                rs -> {
+                    lemmas.put(rs.getString(2), rs.getInt(1));
+                }, siteId);
+        return lemmas;
+    }
+}
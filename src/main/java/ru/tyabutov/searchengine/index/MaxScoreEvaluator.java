@@ -0,0 +1,128 @@
+package ru.tyabutov.searchengine.index;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Отбор k лучших страниц с отсечением по верхним границам (MaxScore).
+ * Кандидаты отобраны пересечением по части лемм, остальные леммы могут
+ * на странице отсутствовать и дают нулевой вклад. Леммы упорядочены по возрастанию
+ * верхней границы вклада; самые слабые леммы, сумма границ которых не дотягивает
+ * до порога заполненной кучи, становятся несущественными: страница без существенных
+ * лемм в кучу попасть не может. Поэтому следующий кандидат ищется только
+ * по спискам существенных лемм, а списки несущественных лишь догоняют его,
+ * и только пока накопленная оценка вместе с их границами ещё проходит порог.
+ */
+public final class MaxScoreEvaluator {
+    private static final int INTERRUPT_CHECK_MASK = 4095;
+
+    private MaxScoreEvaluator() {
+    }
+
+    /**
+     * Оценивает кандидатов по частотам лемм и числу страниц самого сайта.
+     */
+    public static int evaluate(RankingView view, int[] candidates, Scorer scorer, TopK topK) {
+        int[] documentFrequencies = new int[view.termCount()];
+        for (int term = 0; term < documentFrequencies.length; term++) {
+            documentFrequencies[term] = view.documentFrequency(term);
+        }
+        return evaluate(view, documentFrequencies, view.pageCount(), candidates, scorer, topK);
+    }
+
+    /**
+     * Кандидаты должны быть отсортированы по возрастанию id. Частоты лемм и число страниц
+     * передаются отдельно, чтобы при поиске по нескольким сайтам idf считался по всем сразу.
+     * Возвращает число страниц, отброшенных без полной оценки.
+     * При прерывании потока оценка останавливается, в topK остаётся то, что успели отобрать.
+     */
+    public static int evaluate(RankingView view, int[] documentFrequencies, int pageCount, int[] candidates,
+                               Scorer scorer, TopK topK) {
+        int termCount = view.termCount();
+        if (termCount == 0 || candidates.length == 0) {
+            return 0;
+        }
+        int sitePageCount = view.pageCount();
+        double averagePageLength = sitePageCount == 0 ? 0 : view.totalPageLength() / sitePageCount;
+        Scorer.TermScorer[] termScorers = new Scorer.TermScorer[termCount];
+        float[] bounds = new float[termCount];
+        Integer[] order = new Integer[termCount];
+        for (int term = 0; term < termCount; term++) {
+            termScorers[term] = scorer.termScorer(documentFrequencies[term], pageCount, averagePageLength);
+            bounds[term] = termScorers[term].maxScore(view.maxRank(term));
+            order[term] = term;
+        }
+        Arrays.sort(order, Comparator.comparingDouble(term -> bounds[term]));
+        float[] prefixBounds = new float[termCount + 1];
+        for (int i = 0; i < termCount; i++) {
+            prefixBounds[i + 1] = prefixBounds[i] + bounds[order[i]];
+        }
+
+        float threshold = Float.NEGATIVE_INFINITY;
+        int essential = 0;
+        int pruned = 0;
+        int steps = 0;
+        int candidate = 0;
+        while (candidate < candidates.length) {
+            if ((steps++ & INTERRUPT_CHECK_MASK) == 0 && Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            if (topK.threshold() > threshold) {
+                threshold = topK.threshold();
+                while (essential < termCount && prefixBounds[essential + 1] < threshold) {
+                    essential++;
+                }
+                if (essential == termCount) {
+                    pruned += candidates.length - candidate;
+                    break;
+                }
+            }
+            int pageId = candidates[candidate];
+            int next = Integer.MAX_VALUE;
+            for (int i = essential; i < termCount; i++) {
+                next = Math.min(next, view.nextPage(order[i], pageId));
+            }
+            if (next != pageId) {
+                int skipTo = seek(candidates, candidate, next);
+                pruned += skipTo - candidate;
+                candidate = skipTo;
+                continue;
+            }
+
+            float pageLength = view.pageLength(pageId);
+            float score = 0;
+            for (int i = termCount - 1; i >= essential; i--) {
+                score += termScorers[order[i]].score(view.rank(order[i], pageId), pageLength);
+            }
+            boolean skipped = false;
+            for (int i = essential - 1; i >= 0; i--) {
+                if (score + prefixBounds[i + 1] < threshold) {
+                    skipped = true;
+                    break;
+                }
+                score += termScorers[order[i]].score(view.rank(order[i], pageId), pageLength);
+            }
+            if (skipped) {
+                pruned++;
+            } else {
+                topK.offer(pageId, score);
+            }
+            candidate++;
+        }
+        return pruned;
+    }
+
+    /**
+     * Позиция первого кандидата с id не меньше target, найденная экспоненциальным
+     * шагом от from, или candidates.length, если таких нет.
+     */
+    private static int seek(int[] candidates, int from, int target) {
+        int step = 1;
+        while (from + step < candidates.length && candidates[from + step] < target) {
+            step <<= 1;
+        }
+        int position = Arrays.binarySearch(candidates, from + (step >> 1),
+                Math.min(from + step + 1, candidates.length), target);
+        return position < 0 ? -position - 1 : position;
+    }
+}
@@ -0,0 +1,102 @@
+package ru.tyabutov.searchengine.index;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.tyabutov.searchengine.config.WriterSettings;
+import ru.tyabutov.searchengine.model.ContentCodec;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Переносит содержимое страниц из старых столбцов page.content, page.text и
+ * page.lemma_offsets в сжатую таблицу page_content.
+ * Старые столбцы удаляются, только если включён writer-settings.drop-legacy-page-columns
+ * и у каждой страницы со старым содержимым есть строка в page_content.
+ * Иначе столбцы остаются, но становятся NULL-допустимыми: ddl-auto: update их не трогает,
+ * а NOT NULL у page.content ломал бы вставку новых страниц.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+public class PageContentMigration {
+    private static final int CHUNK_SIZE = 500;
+    private static final List<String> LEGACY_COLUMNS = List.of("content", "text", "lemma_offsets");
+    private static final String COUNT_NOT_COPIED =
+            "SELECT COUNT(*) FROM page p LEFT JOIN page_content pc ON pc.page_id = p.id " +
+                    "WHERE p.content IS NOT NULL AND pc.page_id IS NULL";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final WriterSettings settings;
+
+    public PageContentMigration(JdbcTemplate jdbcTemplate, WriterSettings settings) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.settings = settings;
+    }
+
+    @PostConstruct
+    public void migrate() {
+        List<Map<String, Object>> columns = jdbcTemplate.queryForList(
+                "SELECT column_name AS name, column_type AS type, is_nullable AS nullable " +
+                        "FROM information_schema.columns WHERE table_schema = DATABASE() AND table_name = 'page'");
+        List<Map<String, Object>> legacyColumns = columns.stream()
+                .filter(column -> LEGACY_COLUMNS.stream().anyMatch(((String) column.get("name"))::equalsIgnoreCase))
+                .toList();
+        if (legacyColumns.isEmpty()) {
+            return;
+        }
+        List<String> names = legacyColumns.stream().map(column -> ((String) column.get("name")).toLowerCase()).toList();
+        long notCopied = 0;
+        if (names.contains("content")) {
+            if (countNotCopied() > 0) {
+                copyContent(names.contains("text"), names.contains("lemma_offsets"));
+            }
+            notCopied = countNotCopied();
+        }
+        if (notCopied > 0 || !settings.isDropLegacyPageColumns()) {
+            if (notCopied > 0) {
+                System.out.println("Ошибка миграции page_content: не перенесено страниц: " + notCopied
+                        + ", старые столбцы page сохранены");
+            }
+            makeNullable(legacyColumns);
+            return;
+        }
+        jdbcTemplate.execute("ALTER TABLE page " + String.join(", ",
+                names.stream().map(column -> "DROP COLUMN `" + column + "`").toList()));
+    }
+
+    private long countNotCopied() {
+        Long count = jdbcTemplate.queryForObject(COUNT_NOT_COPIED, Long.class);
+        return count == null ? 0 : count;
+    }
+
+    private void makeNullable(List<Map<String, Object>> legacyColumns) {
+        List<String> modifications = legacyColumns.stream()
+                .filter(column -> "NO".equalsIgnoreCase((String) column.get("nullable")))
+                .map(column -> "MODIFY COLUMN `" + column.get("name") + "` " + column.get("type") + " NULL")
+                .toList();
+        if (!modifications.isEmpty()) {
+            jdbcTemplate.execute("ALTER TABLE page " + String.join(", ", modifications));
+        }
+    }
+
+    private void copyContent(boolean hasText, boolean hasOffsets) {
+        String select = "SELECT id, content, " + (hasText ? "text" : "NULL") + ", "
+                + (hasOffsets ? "lemma_offsets" : "NULL") + " FROM page WHERE id > ? ORDER BY id LIMIT ?";
+        int lastId = 0;
+        List<Object[]> rows;
+        do {
+            rows = jdbcTemplate.query(select, (rs, rowNum) -> new Object[]{
+                    rs.getInt(1),
+                    ContentCodec.compress(rs.getString(2)),
+                    ContentCodec.compress(rs.getString(3)),
+                    rs.getBytes(4)}, lastId, CHUNK_SIZE);
+            if (!rows.isEmpty()) {
+                jdbcTemplate.batchUpdate("INSERT IGNORE INTO page_content (page_id, content, text, lemma_offsets) " +
+                        "VALUES (?, ?, ?, ?)", rows);
+                lastId = (Integer) rows.get(rows.size() - 1)[0];
+            }
+        } while (rows.size() == CHUNK_SIZE);
+    }
+}
@@ -0,0 +1,102 @@
+package ru.tyabutov.searchengine.index;
+
+import java.util.Arrays;
+
+/**
+ * Отсортированный список id страниц, на которых встречается лемма, вместе с рангами.
+ * Запись идёт под блокировкой, чтение - через неизменяемый снимок массивов.
+ */
+public class PostingList {
+    private int[] pageIds = new int[4];
+    private float[] ranks = new float[4];
+    private int size;
+    private volatile Snapshot snapshot;
+
+    /**
+     * maxRank - наибольший ранг в списке, totalRank - сумма рангов.
+     */
+    public record Snapshot(int[] pageIds, float[] ranks, float maxRank, double totalRank) {
+
+        static Snapshot of(int[] pageIds, float[] ranks) {
+            float maxRank = 0;
+            double totalRank = 0;
+            for (float rank : ranks) {
+                maxRank = Math.max(maxRank, rank);
+                totalRank += rank;
+            }
+            return new Snapshot(pageIds, ranks, maxRank, totalRank);
+        }
+
+        /**
+         * Ранг страницы или 0, если её нет в снимке.
+         */
+        public float rank(int pageId) {
+            int position = Arrays.binarySearch(pageIds, pageId);
+            return position < 0 ? 0 : ranks[position];
+        }
+    }
+
+    public synchronized void add(int pageId, float rank) {
+        int position = Arrays.binarySearch(pageIds, 0, size, pageId);
+        if (position >= 0) {
+            ranks[position] = rank;
+            snapshot = null;
+            return;
+        }
+        position = -position - 1;
+        if (size == pageIds.length) {
+            pageIds = Arrays.copyOf(pageIds, size * 2);
+            ranks = Arrays.copyOf(ranks, size * 2);
+        }
+        System.arraycopy(pageIds, position, pageIds, position + 1, size - position);
+        System.arraycopy(ranks, position, ranks, position + 1, size - position);
+        pageIds[position] = pageId;
+        ranks[position] = rank;
+        size++;
+        snapshot = null;
+    }
+
+    /**
+     * Прибавляет delta к рангу страницы, добавляя её при отсутствии.
+     */
+    public synchronized void increment(int pageId, float delta) {
+        int position = Arrays.binarySearch(pageIds, 0, size, pageId);
+        if (position >= 0) {
+            ranks[position] += delta;
+            snapshot = null;
+            return;
+        }
+        add(pageId, delta);
+    }
+
+    public synchronized boolean remove(int pageId) {
+        int position = Arrays.binarySearch(pageIds, 0, size, pageId);
+        if (position < 0) {
+            return false;
+        }
+        System.arraycopy(pageIds, position + 1, pageIds, position, size - position - 1);
+        System.arraycopy(ranks, position + 1, ranks, position, size - position - 1);
+        size--;
+        snapshot = null;
+        return true;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int[] pageIds() {
+        return snapshot().pageIds();
+    }
+
+    public Snapshot snapshot() {
+        Snapshot result = snapshot;
+        if (result == null) {
+            synchronized (this) {
+                result = Snapshot.of(Arrays.copyOf(pageIds, size), Arrays.copyOf(ranks, size));
+                snapshot = result;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,31 @@
+package ru.tyabutov.searchengine.index;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Источник списков страниц по леммам, из которого читает поиск.
+ */
+public interface PostingSource {
+
+    int documentFrequency(int siteId, String lemma);
+
+    /**
+     * Число проиндексированных страниц сайта.
+     */
+    int pageCount(int siteId);
+
+    /**
+     * Возвращает отсортированные id страниц сайта, содержащих все переданные леммы.
+     */
+    int[] findPages(int siteId, Collection<String> lemmas);
+
+    /**
+     * Снимает списки переданных лемм и длины страниц сайта для ранжирования кандидатов.
+     */
+    RankingView rankingView(int siteId, List<String> lemmas);
+
+    void removePage(int siteId, int pageId, Collection<String> lemmas);
+
+    void removeSite(int siteId);
+}
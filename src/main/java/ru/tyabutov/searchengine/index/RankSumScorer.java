@@ -0,0 +1,12 @@
+package ru.tyabutov.searchengine.index;
+
+/**
+ * Прежняя модель: релевантность - сумма рангов лемм запроса на странице.
+ */
+public class RankSumScorer implements Scorer {
+
+    @Override
+    public TermScorer termScorer(int documentFrequency, int pageCount, double averagePageLength) {
+        return (rank, pageLength) -> rank;
+    }
+}
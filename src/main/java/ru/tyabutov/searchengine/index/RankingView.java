@@ -0,0 +1,39 @@
+package ru.tyabutov.searchengine.index;
+
+/**
+ * Снимок списков лемм запроса и длин страниц одного сайта, по которому
+ * ранжируются кандидаты. Леммы адресуются номером в порядке, переданном при создании.
+ * Снимок не меняется при последующей индексации и читается без блокировок.
+ */
+public interface RankingView {
+
+    int termCount();
+
+    int documentFrequency(int term);
+
+    /**
+     * Наибольший ранг леммы на страницах сайта - верхняя граница для отсечения кандидатов.
+     */
+    float maxRank(int term);
+
+    /**
+     * Наименьший id страницы с леммой, не меньший target, или Integer.MAX_VALUE.
+     * Вместе с rank для каждой леммы вызывается с неубывающими id.
+     */
+    int nextPage(int term, int target);
+
+    /**
+     * Ранг леммы на странице или 0, если её там нет.
+     * Для каждой леммы страницы запрашиваются по возрастанию id.
+     */
+    float rank(int term, int pageId);
+
+    /**
+     * Длина страницы - сумма рангов всех её лемм.
+     */
+    float pageLength(int pageId);
+
+    int pageCount();
+
+    double totalPageLength();
+}
@@ -0,0 +1,21 @@
+package ru.tyabutov.searchengine.index;
+
+/**
+ * Модель релевантности: вклад леммы в оценку страницы по рангу леммы на странице
+ * и длине страницы. Вклад не убывает с ростом ранга и не растёт с ростом длины,
+ * поэтому оценка при максимальном ранге леммы и нулевой длине служит верхней
+ * границей для отсечения, общей для всех страниц.
+ */
+public interface Scorer {
+
+    TermScorer termScorer(int documentFrequency, int pageCount, double averagePageLength);
+
+    @FunctionalInterface
+    interface TermScorer {
+        float score(float rank, float pageLength);
+
+        default float maxScore(float maxRank) {
+            return score(maxRank, 0);
+        }
+    }
+}
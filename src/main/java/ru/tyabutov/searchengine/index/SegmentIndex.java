@@ -0,0 +1,748 @@
+package ru.tyabutov.searchengine.index;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import ru.tyabutov.searchengine.config.IndexBackend;
+import ru.tyabutov.searchengine.config.SearchSettings;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * Обратный индекс в неизменяемых сегментах на диске, читаемых через MappedByteBuffer.
+ * Новые страницы сначала попадают в резидентный InvertedIndex, после индексации сайта
+ * сбрасываются в новый сегмент, а фоновое слияние объединяет сегменты сайта
+ * и окончательно выбрасывает удалённые страницы. Источником истины остаётся MySQL:
+ * при старте сегменты, не совпадающие с таблицей index, строятся заново.
+ */
+@Component
+public class SegmentIndex implements PostingSource {
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String POSTINGS_QUERY =
+            "SELECT CAST(l.lemma AS BINARY), i.page_id, i.`rank` FROM `index` i " +
+                    "JOIN lemma l ON l.id = i.lemma_id WHERE l.site_id = ? " +
+                    "ORDER BY CAST(l.lemma AS BINARY), i.page_id";
+    private static final String PAGES_QUERY =
+            "SELECT i.page_id, SUM(i.`rank`) FROM `index` i JOIN page p ON p.id = i.page_id " +
+                    "WHERE p.site_id = ? GROUP BY i.page_id ORDER BY i.page_id";
+    private static final String SITE_STATS_QUERY =
+            "SELECT p.site_id, COUNT(DISTINCT i.page_id), MAX(i.page_id) FROM `index` i " +
+                    "JOIN page p ON p.id = i.page_id GROUP BY p.site_id";
+    private static final int[] NO_PAGES = new int[0];
+
+    private final InvertedIndex memtable;
+    private final JdbcTemplate jdbcTemplate;
+    private final SearchSettings settings;
+
+    private final Map<Integer, SiteSegments> sites = new ConcurrentHashMap<>();
+    private final AtomicLong segmentIds = new AtomicLong(System.currentTimeMillis());
+    private Path directory;
+    private ScheduledExecutorService merger;
+
+    /**
+     * Сегменты одного сайта. Список заменяется целиком под блокировкой записи,
+     * поиск читает его под блокировкой чтения вместе с резидентным индексом,
+     * чтобы при сбросе страница не попала в выдачу дважды.
+     * flushing - отсоединённая часть резидентного индекса, из которой сейчас строится сегмент;
+     * до появления сегмента поиск читает страницы из неё.
+     */
+    private static class SiteSegments {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Object flushLock = new Object();
+        private volatile List<IndexSegment> segments = List.of();
+        private volatile InvertedIndex.SiteIndex flushing;
+        private volatile int[] deletedPages = NO_PAGES;
+
+        private boolean isDeleted(int pageId) {
+            int[] deleted = deletedPages;
+            return deleted.length > 0 && Arrays.binarySearch(deleted, pageId) >= 0;
+        }
+
+        private synchronized void markDeleted(int pageId) {
+            int position = Arrays.binarySearch(deletedPages, pageId);
+            if (position >= 0) {
+                return;
+            }
+            position = -position - 1;
+            int[] deleted = new int[deletedPages.length + 1];
+            System.arraycopy(deletedPages, 0, deleted, 0, position);
+            deleted[position] = pageId;
+            System.arraycopy(deletedPages, position, deleted, position + 1, deletedPages.length - position);
+            deletedPages = deleted;
+        }
+
+        private synchronized void clearDeleted(int[] applied) {
+            deletedPages = Arrays.stream(deletedPages)
+                    .filter(pageId -> Arrays.binarySearch(applied, pageId) < 0)
+                    .toArray();
+        }
+    }
+
+    public SegmentIndex(InvertedIndex memtable, JdbcTemplate jdbcTemplate, SearchSettings settings) {
+        this.memtable = memtable;
+        this.jdbcTemplate = jdbcTemplate;
+        this.settings = settings;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        directory = Paths.get(settings.getSegmentsDir());
+        Files.createDirectories(directory);
+        load();
+        merger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "segment-merger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        merger.scheduleWithFixedDelay(this::mergeSegments, settings.getMergeIntervalMs(),
+                settings.getMergeIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (merger != null) {
+            merger.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return settings.getBackend() == IndexBackend.SEGMENTS;
+    }
+
+    /**
+     * Сбрасывает страницы сайта из резидентного индекса в новый сегмент.
+     * Резидентный индекс сайта атомарно заменяется пустым, поэтому страницы,
+     * добавленные во время сброса, остаются в новом резидентном индексе,
+     * а страницы, удалённые во время сброса, помечаются удалёнными в новом сегменте.
+     * Если сегмент записать не удалось, страницы возвращаются в резидентный индекс.
+     */
+    public void flush(int siteId) {
+        if (!isEnabled()) {
+            return;
+        }
+        SiteSegments site = sites.computeIfAbsent(siteId, id -> new SiteSegments());
+        synchronized (site.flushLock) {
+            InvertedIndex.SiteIndex flushing;
+            site.lock.writeLock().lock();
+            try {
+                flushing = memtable.detachSite(siteId);
+                site.flushing = flushing;
+            } finally {
+                site.lock.writeLock().unlock();
+            }
+            if (flushing == null) {
+                return;
+            }
+
+            IndexSegment segment = null;
+            try {
+                segment = writeSegment(siteId, flushing);
+            } catch (Exception e) {
+                System.out.println("Ошибка flush сегмента: " + e.getMessage());
+            }
+
+            site.lock.writeLock().lock();
+            try {
+                if (sites.get(siteId) != site) {
+                    if (segment != null) {
+                        deleteFiles(List.of(segment));
+                    }
+                } else if (segment != null) {
+                    List<IndexSegment> segments = new ArrayList<>(site.segments);
+                    segments.add(segment);
+                    site.segments = List.copyOf(segments);
+                } else {
+                    memtable.restoreSite(siteId, flushing);
+                }
+                site.flushing = null;
+            } finally {
+                site.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Записывает снимок отсоединённого индекса сайта в сегмент.
+     * Возвращает null, если в нём не осталось страниц.
+     */
+    private IndexSegment writeSegment(int siteId, InvertedIndex.SiteIndex flushing) throws IOException {
+        Map<String, PostingList.Snapshot> postings;
+        PostingList.Snapshot pageLengths;
+        synchronized (flushing) {
+            postings = flushing.snapshot();
+            pageLengths = flushing.pageLengths();
+        }
+        if (pageLengths.pageIds().length == 0) {
+            return null;
+        }
+        List<Map.Entry<byte[], PostingList.Snapshot>> lemmas = new ArrayList<>(postings.size());
+        postings.forEach((lemma, snapshot) -> lemmas.add(Map.entry(lemma.getBytes(StandardCharsets.UTF_8), snapshot)));
+        lemmas.sort((first, second) -> Arrays.compareUnsigned(first.getKey(), second.getKey()));
+
+        try (SegmentWriter writer = new SegmentWriter(newSegmentPath(siteId), siteId)) {
+            for (Map.Entry<byte[], PostingList.Snapshot> lemma : lemmas) {
+                int[] pageIds = lemma.getValue().pageIds();
+                float[] ranks = lemma.getValue().ranks();
+                writer.startLemma(lemma.getKey());
+                for (int i = 0; i < pageIds.length; i++) {
+                    writer.addPosting(pageIds[i], ranks[i]);
+                }
+            }
+            for (int i = 0; i < pageLengths.pageIds().length; i++) {
+                writer.addPage(pageLengths.pageIds()[i], pageLengths.ranks()[i]);
+            }
+            return IndexSegment.open(writer.finish());
+        }
+    }
+
+    @Override
+    public int documentFrequency(int siteId, String lemma) {
+        int frequency = memtable.documentFrequency(siteId, lemma);
+        SiteSegments site = sites.get(siteId);
+        if (site == null) {
+            return frequency;
+        }
+        InvertedIndex.SiteIndex flushing = site.flushing;
+        if (flushing != null) {
+            frequency += flushing.documentFrequency(lemma);
+        }
+        byte[] term = lemma.getBytes(StandardCharsets.UTF_8);
+        for (IndexSegment segment : site.segments) {
+            int slot = segment.find(term);
+            if (slot >= 0) {
+                frequency += segment.documentFrequency(slot);
+            }
+        }
+        return frequency;
+    }
+
+    /**
+     * Страницы, помеченные удалёнными, учитываются до слияния сегментов.
+     */
+    @Override
+    public int pageCount(int siteId) {
+        int pageCount = memtable.pageCount(siteId);
+        SiteSegments site = sites.get(siteId);
+        if (site != null) {
+            InvertedIndex.SiteIndex flushing = site.flushing;
+            pageCount += flushing == null ? 0 : flushing.pageCount();
+            pageCount += site.segments.stream().mapToInt(IndexSegment::pageCount).sum();
+        }
+        return pageCount;
+    }
+
+    @Override
+    public int[] findPages(int siteId, Collection<String> lemmas) {
+        SiteSegments site = sites.get(siteId);
+        if (site == null || lemmas.isEmpty()) {
+            return memtable.findPages(siteId, lemmas);
+        }
+        byte[][] terms = toTerms(lemmas);
+        site.lock.readLock().lock();
+        try {
+            int[] result = memtable.findPages(siteId, lemmas);
+            if (site.flushing != null) {
+                result = union(result, site.flushing.findPages(lemmas));
+            }
+            for (IndexSegment segment : site.segments) {
+                int[] pages = intersect(segment, terms, site::isDeleted);
+                if (pages.length > 0) {
+                    result = union(result, pages);
+                }
+            }
+            return result;
+        } finally {
+            site.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public RankingView rankingView(int siteId, List<String> lemmas) {
+        SiteSegments site = sites.get(siteId);
+        if (site == null) {
+            return memtable.rankingView(siteId, lemmas);
+        }
+        site.lock.readLock().lock();
+        try {
+            List<RankingView> memory = new ArrayList<>(2);
+            memory.add(memtable.rankingView(siteId, lemmas));
+            if (site.flushing != null) {
+                memory.add(site.flushing.rankingView(lemmas));
+            }
+            return new SegmentsView(memory, site.segments, toTerms(lemmas));
+        } finally {
+            site.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Объединяет снимки резидентного индекса (и его сбрасываемой части) с сегментами,
+     * снятыми под той же блокировкой.
+     * Каждая страница лежит ровно в одном месте, поэтому ранги и длины не суммируются дважды.
+     * Отображение сегмента остаётся валидным и после удаления его файла слиянием.
+     */
+    private static final class SegmentsView implements RankingView {
+        private final List<RankingView> memory;
+        private final List<IndexSegment> segments;
+        private final int[][] slots;
+        private final IndexSegment.Cursor[][] cursors;
+
+        private SegmentsView(List<RankingView> memory, List<IndexSegment> segments, byte[][] terms) {
+            this.memory = memory;
+            this.segments = segments;
+            this.slots = new int[segments.size()][terms.length];
+            this.cursors = new IndexSegment.Cursor[segments.size()][terms.length];
+            for (int i = 0; i < segments.size(); i++) {
+                for (int term = 0; term < terms.length; term++) {
+                    slots[i][term] = segments.get(i).find(terms[term]);
+                    if (slots[i][term] >= 0) {
+                        cursors[i][term] = segments.get(i).cursor(slots[i][term]);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public int termCount() {
+            return memory.get(0).termCount();
+        }
+
+        @Override
+        public int documentFrequency(int term) {
+            int frequency = memory.stream().mapToInt(view -> view.documentFrequency(term)).sum();
+            for (int i = 0; i < segments.size(); i++) {
+                if (slots[i][term] >= 0) {
+                    frequency += segments.get(i).documentFrequency(slots[i][term]);
+                }
+            }
+            return frequency;
+        }
+
+        @Override
+        public float maxRank(int term) {
+            float maxRank = 0;
+            for (RankingView view : memory) {
+                maxRank = Math.max(maxRank, view.maxRank(term));
+            }
+            for (int i = 0; i < segments.size(); i++) {
+                if (slots[i][term] >= 0) {
+                    maxRank = Math.max(maxRank, segments.get(i).maxRank(slots[i][term]));
+                }
+            }
+            return maxRank;
+        }
+
+        /**
+         * Страница сегмента может оказаться помеченной удалённой; такие id
+         * отсеиваются сверкой со списком кандидатов.
+         */
+        @Override
+        public int nextPage(int term, int target) {
+            int next = Integer.MAX_VALUE;
+            for (RankingView view : memory) {
+                next = Math.min(next, view.nextPage(term, target));
+            }
+            for (IndexSegment.Cursor[] segmentCursors : cursors) {
+                IndexSegment.Cursor cursor = segmentCursors[term];
+                if (cursor != null && cursor.advance(target)) {
+                    next = Math.min(next, cursor.pageId());
+                }
+            }
+            return next;
+        }
+
+        @Override
+        public float rank(int term, int pageId) {
+            float rank = 0;
+            for (RankingView view : memory) {
+                rank += view.rank(term, pageId);
+            }
+            for (IndexSegment.Cursor[] segmentCursors : cursors) {
+                IndexSegment.Cursor cursor = segmentCursors[term];
+                if (cursor != null && cursor.advance(pageId) && cursor.pageId() == pageId) {
+                    rank += cursor.rank();
+                }
+            }
+            return rank;
+        }
+
+        @Override
+        public float pageLength(int pageId) {
+            float length = 0;
+            for (RankingView view : memory) {
+                length += view.pageLength(pageId);
+            }
+            for (int i = 0; i < segments.size() && length == 0; i++) {
+                float segmentLength = segments.get(i).pageLength(pageId);
+                if (!Float.isNaN(segmentLength)) {
+                    length = segmentLength;
+                }
+            }
+            return length;
+        }
+
+        @Override
+        public int pageCount() {
+            return memory.stream().mapToInt(RankingView::pageCount).sum()
+                    + segments.stream().mapToInt(IndexSegment::pageCount).sum();
+        }
+
+        @Override
+        public double totalPageLength() {
+            return memory.stream().mapToDouble(RankingView::totalPageLength).sum()
+                    + segments.stream().mapToDouble(IndexSegment::totalPageLength).sum();
+        }
+    }
+
+    /**
+     * Страница из сегмента только помечается удалённой и исключается из выдачи,
+     * физически она выбрасывается при следующем слиянии сегментов сайта.
+     * Страница из сбрасываемой части могла уже попасть в строящийся сегмент,
+     * поэтому тоже помечается удалённой.
+     * Удаление идёт под блокировкой чтения: отсоединение и замена сегментов
+     * не могут произойти между проверками.
+     */
+    @Override
+    public void removePage(int siteId, int pageId, Collection<String> lemmas) {
+        SiteSegments site = sites.get(siteId);
+        if (site == null) {
+            memtable.removePage(siteId, pageId, lemmas);
+            return;
+        }
+        site.lock.readLock().lock();
+        try {
+            memtable.removePage(siteId, pageId, lemmas);
+            InvertedIndex.SiteIndex flushing = site.flushing;
+            boolean flushed = flushing != null && flushing.removePage(pageId, lemmas);
+            if (flushed || site.segments.stream().anyMatch(segment -> segment.containsPage(pageId))) {
+                site.markDeleted(pageId);
+            }
+        } finally {
+            site.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeSite(int siteId) {
+        memtable.removeSite(siteId);
+        SiteSegments site = sites.remove(siteId);
+        if (site != null) {
+            deleteFiles(site.segments);
+        }
+    }
+
+    private void load() {
+        Map<Integer, long[]> expected = new HashMap<>();
+        jdbcTemplate.query(SITE_STATS_QUERY, (RowCallbackHandler) rs ->
+                expected.put(rs.getInt(1), new long[]{rs.getLong(2), rs.getLong(3)}));
+
+        Map<Integer, List<IndexSegment>> existing = new HashMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                try {
+                    IndexSegment segment = IndexSegment.open(file);
+                    existing.computeIfAbsent(segment.siteId(), id -> new ArrayList<>()).add(segment);
+                } catch (IOException e) {
+                    System.out.println("Ошибка чтения сегмента: " + e.getMessage());
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        for (Integer siteId : jdbcTemplate.queryForList("SELECT id FROM site", Integer.class)) {
+            List<IndexSegment> segments = existing.getOrDefault(siteId, List.of());
+            existing.remove(siteId);
+            long[] stats = expected.getOrDefault(siteId, new long[]{0, 0});
+            long pages = segments.stream().mapToLong(IndexSegment::pageCount).sum();
+            long maxPageId = segments.stream().mapToLong(IndexSegment::maxPageId).max().orElse(0);
+            if (pages != stats[0] || maxPageId != stats[1]) {
+                deleteFiles(segments);
+                segments = buildFromDatabase(siteId);
+            }
+            SiteSegments site = new SiteSegments();
+            site.segments = List.copyOf(segments);
+            sites.put(siteId, site);
+        }
+        existing.values().forEach(this::deleteFiles);
+    }
+
+    /**
+     * Строит сегмент сайта потоковым чтением таблицы index, отсортированной по байтам лемм.
+     */
+    private List<IndexSegment> buildFromDatabase(int siteId) {
+        try (SegmentWriter writer = new SegmentWriter(newSegmentPath(siteId), siteId)) {
+            byte[][] previous = new byte[1][];
+            streamRows(POSTINGS_QUERY, siteId, rs -> {
+                byte[] lemma = rs.getBytes(1);
+                if (previous[0] == null || !Arrays.equals(previous[0], lemma)) {
+                    writer.startLemma(lemma);
+                    previous[0] = lemma;
+                }
+                writer.addPosting(rs.getInt(2), rs.getFloat(3));
+            });
+            streamRows(PAGES_QUERY, siteId, rs -> writer.addPage(rs.getInt(1), rs.getFloat(2)));
+            if (writer.pageCount() == 0) {
+                return List.of();
+            }
+            return List.of(IndexSegment.open(writer.finish()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private interface RowConsumer {
+        void accept(ResultSet rs) throws Exception;
+    }
+
+    private void streamRows(String sql, int siteId, RowConsumer consumer) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(Integer.MIN_VALUE);
+            statement.setInt(1, siteId);
+            return statement;
+        }, (RowCallbackHandler) rs -> {
+            try {
+                consumer.accept(rs);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (RuntimeException | SQLException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private void mergeSegments() {
+        for (Map.Entry<Integer, SiteSegments> entry : sites.entrySet()) {
+            SiteSegments site = entry.getValue();
+            List<IndexSegment> segments = site.segments;
+            int[] deleted = site.deletedPages;
+            long pages = segments.stream().mapToLong(IndexSegment::pageCount).sum();
+            boolean tooMany = segments.size() > settings.getMaxSegmentsPerSite();
+            boolean tooManyDeleted = deleted.length > 0 && deleted.length * 10L >= pages;
+            if (!tooMany && !tooManyDeleted) {
+                continue;
+            }
+            try {
+                merge(entry.getKey(), site, segments, deleted);
+            } catch (Exception e) {
+                System.out.println("Ошибка слияния сегментов: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Сливает сегменты сайта в один: леммы объединяются в порядке байтов,
+     * списки страниц - по возрастанию id, удалённые страницы отбрасываются.
+     */
+    private void merge(int siteId, SiteSegments site, List<IndexSegment> segments, int[] deleted)
+            throws IOException {
+        IndexSegment merged = null;
+        try (SegmentWriter writer = new SegmentWriter(newSegmentPath(siteId), siteId)) {
+            int[] slots = new int[segments.size()];
+            PriorityQueue<Integer> queue = new PriorityQueue<>((first, second) -> Arrays.compareUnsigned(
+                    segments.get(first).lemmaBytes(slots[first]), segments.get(second).lemmaBytes(slots[second])));
+            for (int i = 0; i < segments.size(); i++) {
+                if (segments.get(i).lemmaCount() > 0) {
+                    queue.add(i);
+                }
+            }
+            while (!queue.isEmpty()) {
+                byte[] lemma = segments.get(queue.peek()).lemmaBytes(slots[queue.peek()]);
+                List<IndexSegment.Cursor> cursors = new ArrayList<>();
+                List<Integer> sources = new ArrayList<>();
+                while (!queue.isEmpty()
+                        && Arrays.equals(segments.get(queue.peek()).lemmaBytes(slots[queue.peek()]), lemma)) {
+                    int source = queue.poll();
+                    cursors.add(segments.get(source).cursor(slots[source]));
+                    sources.add(source);
+                }
+                writer.startLemma(lemma);
+                mergePostings(writer, cursors, deleted);
+                for (int source : sources) {
+                    if (++slots[source] < segments.get(source).lemmaCount()) {
+                        queue.add(source);
+                    }
+                }
+            }
+            mergePages(writer, segments, deleted);
+            if (writer.pageCount() > 0) {
+                merged = IndexSegment.open(writer.finish());
+            }
+        }
+
+        site.lock.writeLock().lock();
+        try {
+            if (sites.get(siteId) != site) {
+                if (merged != null) {
+                    deleteFiles(List.of(merged));
+                }
+                return;
+            }
+            List<IndexSegment> current = new ArrayList<>(site.segments);
+            current.removeIf(segment -> segments.stream().anyMatch(old -> old == segment));
+            if (merged != null) {
+                current.add(0, merged);
+            }
+            site.segments = List.copyOf(current);
+            site.clearDeleted(Arrays.stream(deleted)
+                    .filter(pageId -> segments.stream().anyMatch(segment -> segment.containsPage(pageId)))
+                    .toArray());
+        } finally {
+            site.lock.writeLock().unlock();
+        }
+        deleteFiles(segments);
+    }
+
+    private void mergePostings(SegmentWriter writer, List<IndexSegment.Cursor> cursors, int[] deleted)
+            throws IOException {
+        boolean[] active = new boolean[cursors.size()];
+        for (int i = 0; i < cursors.size(); i++) {
+            active[i] = cursors.get(i).next();
+        }
+        while (true) {
+            int min = -1;
+            for (int i = 0; i < cursors.size(); i++) {
+                if (active[i] && (min < 0 || cursors.get(i).pageId() < cursors.get(min).pageId())) {
+                    min = i;
+                }
+            }
+            if (min < 0) {
+                return;
+            }
+            IndexSegment.Cursor cursor = cursors.get(min);
+            if (Arrays.binarySearch(deleted, cursor.pageId()) < 0) {
+                writer.addPosting(cursor.pageId(), cursor.rank());
+            }
+            active[min] = cursor.next();
+        }
+    }
+
+    private void mergePages(SegmentWriter writer, List<IndexSegment> segments, int[] deleted) {
+        int[] positions = new int[segments.size()];
+        while (true) {
+            int min = -1;
+            for (int i = 0; i < segments.size(); i++) {
+                if (positions[i] < segments.get(i).pageCount() && (min < 0
+                        || segments.get(i).pageId(positions[i]) < segments.get(min).pageId(positions[min]))) {
+                    min = i;
+                }
+            }
+            if (min < 0) {
+                return;
+            }
+            IndexSegment segment = segments.get(min);
+            int pageId = segment.pageId(positions[min]);
+            if (Arrays.binarySearch(deleted, pageId) < 0) {
+                writer.addPage(pageId, segment.pageLengthAt(positions[min]));
+            }
+            positions[min]++;
+        }
+    }
+
+    static int[] intersect(IndexSegment segment, byte[][] terms, IntPredicate isDeleted) {
+        IndexSegment.Cursor[] cursors = new IndexSegment.Cursor[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            int slot = segment.find(terms[i]);
+            if (slot < 0) {
+                return NO_PAGES;
+            }
+            cursors[i] = segment.cursor(slot);
+        }
+        Arrays.sort(cursors, Comparator.comparingInt(IndexSegment.Cursor::remaining));
+
+        int[] result = new int[cursors[0].remaining()];
+        int size = 0;
+        candidates:
+        while (cursors[0].next()) {
+            int pageId = cursors[0].pageId();
+            for (int i = 1; i < cursors.length; i++) {
+                if (!cursors[i].advance(pageId)) {
+                    break candidates;
+                }
+                if (cursors[i].pageId() != pageId) {
+                    continue candidates;
+                }
+            }
+            if (!isDeleted.test(pageId)) {
+                result[size++] = pageId;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private static int[] union(int[] first, int[] second) {
+        if (first.length == 0) {
+            return second;
+        }
+        int[] result = new int[first.length + second.length];
+        int i = 0;
+        int j = 0;
+        int size = 0;
+        while (i < first.length || j < second.length) {
+            if (j == second.length || (i < first.length && first[i] < second[j])) {
+                result[size++] = first[i++];
+            } else if (i == first.length || second[j] < first[i]) {
+                result[size++] = second[j++];
+            } else {
+                result[size++] = first[i++];
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    static byte[][] toTerms(Collection<String> lemmas) {
+        byte[][] terms = new byte[lemmas.size()][];
+        int i = 0;
+        for (String lemma : lemmas) {
+            terms[i++] = lemma.getBytes(StandardCharsets.UTF_8);
+        }
+        return terms;
+    }
+
+    private Path newSegmentPath(int siteId) {
+        return directory.resolve("site-" + siteId + "-" + segmentIds.incrementAndGet() + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Файлы удаляются сразу; отображение в память остаётся валидным,
+     * пока на сегмент ссылаются выполняющиеся запросы.
+     */
+    private void deleteFiles(List<IndexSegment> segments) {
+        for (IndexSegment segment : segments) {
+            try {
+                Files.deleteIfExists(segment.path());
+            } catch (IOException e) {
+                System.out.println("Ошибка удаления сегмента: " + e.getMessage());
+            }
+        }
+    }
+}
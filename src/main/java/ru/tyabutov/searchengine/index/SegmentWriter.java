@@ -0,0 +1,203 @@
+package ru.tyabutov.searchengine.index;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Пишет неизменяемый сегмент индекса одного сайта.
+ * Файл: заголовок | списки страниц | байты лемм | словарь | метаданные страниц.
+ * Список страниц леммы - пары (varint-разница id с предыдущей страницей, ранг float).
+ * Словарь - записи (смещение леммы, длина леммы, число страниц, смещение списка,
+ * наибольший ранг) в порядке байтов UTF-8 лемм. Метаданные - пары (id страницы, длина) по возрастанию id.
+ * Леммы, страницы внутри леммы и метаданные страниц добавляются по возрастанию.
+ */
+public class SegmentWriter implements Closeable {
+    static final int MAGIC = 0x53454731;
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 40;
+    static final int DICTIONARY_ENTRY_SIZE = 28;
+    static final int PAGE_ENTRY_SIZE = 8;
+
+    private final Path path;
+    private final Path tempPath;
+    private final int siteId;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+    private long position = HEADER_SIZE;
+    private boolean finished;
+
+    private final ByteArrayOutputStream terms = new ByteArrayOutputStream();
+    private final List<long[]> dictionary = new ArrayList<>();
+    private byte[] term;
+    private byte[] previousTerm;
+    private long termPostingsOffset;
+    private int termFrequency;
+    private float termMaxRank;
+    private int lastPageId;
+
+    private int[] pageIds = new int[1024];
+    private float[] pageLengths = new float[1024];
+    private int pageCount;
+
+    public SegmentWriter(Path path, int siteId) throws IOException {
+        this.path = path;
+        this.tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        this.siteId = siteId;
+        this.channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    public void startLemma(byte[] lemma) {
+        closeLemma();
+        if (previousTerm != null && Arrays.compareUnsigned(previousTerm, lemma) >= 0) {
+            throw new IllegalArgumentException("Леммы сегмента должны идти по возрастанию");
+        }
+        term = lemma;
+        previousTerm = lemma;
+        termPostingsOffset = position;
+        termFrequency = 0;
+        termMaxRank = 0;
+        lastPageId = 0;
+    }
+
+    public void addPosting(int pageId, float rank) throws IOException {
+        if (pageId <= lastPageId) {
+            throw new IllegalArgumentException("Страницы леммы должны идти по возрастанию id");
+        }
+        ensureCapacity(9);
+        writeVarint(pageId - lastPageId);
+        buffer.putFloat(rank);
+        position += 4;
+        lastPageId = pageId;
+        termFrequency++;
+        termMaxRank = Math.max(termMaxRank, rank);
+    }
+
+    public void addPage(int pageId, float length) {
+        if (pageCount > 0 && pageId <= pageIds[pageCount - 1]) {
+            throw new IllegalArgumentException("Страницы сегмента должны идти по возрастанию id");
+        }
+        if (pageCount == pageIds.length) {
+            pageIds = Arrays.copyOf(pageIds, pageCount * 2);
+            pageLengths = Arrays.copyOf(pageLengths, pageCount * 2);
+        }
+        pageIds[pageCount] = pageId;
+        pageLengths[pageCount] = length;
+        pageCount++;
+    }
+
+    public int pageCount() {
+        return pageCount;
+    }
+
+    /**
+     * Дописывает словарь и метаданные, сбрасывает файл на диск
+     * и атомарно переименовывает его в итоговый путь.
+     */
+    public Path finish() throws IOException {
+        closeLemma();
+        long termsOffset = position;
+        byte[] termBytes = terms.toByteArray();
+        writeBytes(termBytes);
+
+        long dictionaryOffset = position;
+        for (long[] entry : dictionary) {
+            ensureCapacity(DICTIONARY_ENTRY_SIZE);
+            buffer.putLong(termsOffset + entry[0]);
+            buffer.putInt((int) entry[1]);
+            buffer.putInt((int) entry[2]);
+            buffer.putLong(entry[3]);
+            buffer.putInt((int) entry[4]);
+            position += DICTIONARY_ENTRY_SIZE;
+        }
+
+        long pagesOffset = position;
+        for (int i = 0; i < pageCount; i++) {
+            ensureCapacity(PAGE_ENTRY_SIZE);
+            buffer.putInt(pageIds[i]);
+            buffer.putFloat(pageLengths[i]);
+            position += PAGE_ENTRY_SIZE;
+        }
+        drain();
+        if (position > Integer.MAX_VALUE) {
+            throw new IOException("Сегмент сайта " + siteId + " больше 2 ГБ");
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(siteId).putInt(dictionary.size())
+                .putInt(pageCount).putInt(pageCount == 0 ? 0 : pageIds[pageCount - 1])
+                .putLong(dictionaryOffset).putLong(pagesOffset).flip();
+        channel.write(header, 0);
+        channel.force(true);
+        channel.close();
+        Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE);
+        finished = true;
+        return path;
+    }
+
+    /**
+     * Прерывает незавершённую запись и удаляет временный файл.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!finished) {
+            channel.close();
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    private void closeLemma() {
+        if (term != null && termFrequency > 0) {
+            dictionary.add(new long[]{terms.size(), term.length, termFrequency, termPostingsOffset,
+                    Float.floatToRawIntBits(termMaxRank)});
+            terms.write(term, 0, term.length);
+        }
+        term = null;
+    }
+
+    private void writeVarint(int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+            position++;
+        }
+        buffer.put((byte) value);
+        position++;
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            ensureCapacity(1);
+            int length = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, length);
+            offset += length;
+            position += length;
+        }
+    }
+
+    private void ensureCapacity(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        long offset = position - buffer.remaining();
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer, offset);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,95 @@
+package ru.tyabutov.searchengine.index;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Компактное представление позиций лемм в тексте страницы.
+ * Для каждой леммы хранятся пары (начало, конец) вхождений в виде varint с дельта-кодированием.
+ * Формат записи леммы: длина имени, имя в UTF-8, длина данных, число вхождений, пары.
+ * Длина данных позволяет при чтении пропускать ненужные леммы, не разбирая их.
+ */
+public final class TokenOffsets {
+
+    private TokenOffsets() {
+    }
+
+    public static byte[] encode(Map<String, int[]> offsets) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarInt(out, offsets.size());
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        for (Map.Entry<String, int[]> entry : offsets.entrySet()) {
+            byte[] lemma = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            int[] positions = entry.getValue();
+
+            payload.reset();
+            writeVarInt(payload, positions.length / 2);
+            int previousStart = 0;
+            for (int i = 0; i < positions.length; i += 2) {
+                writeVarInt(payload, positions[i] - previousStart);
+                writeVarInt(payload, positions[i + 1] - positions[i]);
+                previousStart = positions[i];
+            }
+
+            writeVarInt(out, lemma.length);
+            out.writeBytes(lemma);
+            writeVarInt(out, payload.size());
+            out.write(payload.toByteArray(), 0, payload.size());
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Возвращает пары (начало, конец) вхождений только для запрошенных лемм.
+     */
+    public static Map<String, int[]> decode(byte[] data, Collection<String> lemmas) {
+        Map<String, int[]> result = new HashMap<>();
+        if (data == null || data.length == 0) {
+            return result;
+        }
+        Set<String> wanted = new HashSet<>(lemmas);
+        int[] position = {0};
+        int count = readVarInt(data, position);
+        for (int i = 0; i < count && result.size() < wanted.size(); i++) {
+            int lemmaLength = readVarInt(data, position);
+            String lemma = new String(data, position[0], lemmaLength, StandardCharsets.UTF_8);
+            position[0] += lemmaLength;
+            int payloadLength = readVarInt(data, position);
+            if (!wanted.contains(lemma)) {
+                position[0] += payloadLength;
+                continue;
+            }
+            int occurrences = readVarInt(data, position);
+            int[] positions = new int[occurrences * 2];
+            int start = 0;
+            for (int j = 0; j < occurrences; j++) {
+                start += readVarInt(data, position);
+                positions[j * 2] = start;
+                positions[j * 2 + 1] = start + readVarInt(data, position);
+            }
+            result.put(lemma, positions);
+        }
+        return result;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(byte[] data, int[] position) {
+        int value = 0;
+        int shift = 0;
+        byte current;
+        do {
+            current = data[position[0]++];
+            value |= (current & 0x7F) << shift;
+            shift += 7;
+        } while ((current & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,125 @@
+package ru.tyabutov.searchengine.index;
+
+import java.util.Arrays;
+
+/**
+ * Отбор k страниц с наибольшей релевантностью через ограниченную min-кучу.
+ * При равной релевантности выше оказывается страница с меньшим id.
+ */
+public class TopK {
+    private final int[] ids;
+    private final float[] scores;
+    private int size;
+
+    public TopK(int k) {
+        ids = new int[Math.max(0, k)];
+        scores = new float[Math.max(0, k)];
+    }
+
+    public void offer(int id, float score) {
+        if (ids.length == 0) {
+            return;
+        }
+        if (size < ids.length) {
+            ids[size] = id;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (isBetter(id, score, ids[0], scores[0])) {
+            ids[0] = id;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    public void offerAll(TopK other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.ids[i], other.scores[i]);
+        }
+    }
+
+    public boolean isFull() {
+        return size == ids.length;
+    }
+
+    /**
+     * Минимальная релевантность, которую нужно превысить, чтобы попасть в заполненную кучу.
+     */
+    public float threshold() {
+        return isFull() && size > 0 ? scores[0] : Float.NEGATIVE_INFINITY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Возвращает id отобранных страниц по убыванию релевантности.
+     */
+    public int[] sortedIds() {
+        return Arrays.stream(sortedOrder()).mapToInt(i -> ids[i]).toArray();
+    }
+
+    /**
+     * Релевантность отобранных страниц в том же порядке, что и sortedIds.
+     */
+    public float[] sortedScores() {
+        Integer[] order = sortedOrder();
+        float[] result = new float[order.length];
+        for (int i = 0; i < order.length; i++) {
+            result[i] = scores[order[i]];
+        }
+        return result;
+    }
+
+    private Integer[] sortedOrder() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int byScore = Float.compare(scores[b], scores[a]);
+            return byScore != 0 ? byScore : Integer.compare(ids[a], ids[b]);
+        });
+        return order;
+    }
+
+    private static boolean isBetter(int id, float score, int otherId, float otherScore) {
+        return score > otherScore || (score == otherScore && id < otherId);
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (!isBetter(ids[parent], scores[parent], ids[index], scores[index])) {
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int smallest = index;
+            for (int child = 2 * index + 1; child <= 2 * index + 2 && child < size; child++) {
+                if (isBetter(ids[smallest], scores[smallest], ids[child], scores[child])) {
+                    smallest = child;
+                }
+            }
+            if (smallest == index) {
+                return;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    private void swap(int first, int second) {
+        int id = ids[first];
+        ids[first] = ids[second];
+        ids[second] = id;
+        float score = scores[first];
+        scores[first] = scores[second];
+        scores[second] = score;
+    }
+}
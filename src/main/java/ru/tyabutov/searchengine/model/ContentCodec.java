@@ -0,0 +1,86 @@
+package ru.tyabutov.searchengine.model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Сжатие содержимого страниц алгоритмом deflate.
+ */
+public final class ContentCodec {
+    private static final int BUFFER_SIZE = 8192;
+
+    private ContentCodec() {
+    }
+
+    public static byte[] compress(String value) {
+        if (value == null) {
+            return null;
+        }
+        byte[] input = value.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, input.length / 4));
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Поток, сжимающий записанные в него байты в тот же формат, что и compress.
+     */
+    public static DeflaterOutputStream compressingStream(OutputStream out) {
+        return new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION), BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    def.end();
+                }
+            }
+        };
+    }
+
+    public static String decompress(byte[] value) {
+        return decompress(value, StandardCharsets.UTF_8);
+    }
+
+    public static String decompress(byte[] value, Charset charset) {
+        if (value == null) {
+            return null;
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(value);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(value.length * 4);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && !inflater.finished()
+                        && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Повреждённое содержимое страницы");
+                }
+                out.write(buffer, 0, length);
+            }
+            return out.toString(charset);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package ru.tyabutov.searchengine.model;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Журнал обхода одного сайта, который только дописывается в конец файла.
+ * Строка "C адрес" - адрес захвачен и поставлен в очередь, "D адрес" - страница
+ * обработана и её ссылки уже захвачены. Отметки D копятся в памяти и пишутся
+ * только при контрольной точке после IndexWriter.flush, поэтому страница,
+ * отмеченная обработанной, уже сохранена в БД. При возобновлении обхода в очередь
+ * возвращаются захваченные, но не обработанные адреса.
+ */
+public class CrawlCheckpoint {
+    private static final String CLAIMED = "C ";
+    private static final String DONE = "D ";
+    private static final CrawlCheckpoint DISABLED = new CrawlCheckpoint(null, null, null, List.of(), List.of());
+
+    private final Path path;
+    private final FileOutputStream stream;
+    private final Writer writer;
+    private final List<String> claimedUrls;
+    private final List<String> pendingUrls;
+    private final Queue<String> done = new ConcurrentLinkedQueue<>();
+
+    private CrawlCheckpoint(Path path, FileOutputStream stream, Writer writer,
+                            List<String> claimedUrls, List<String> pendingUrls) {
+        this.path = path;
+        this.stream = stream;
+        this.writer = writer;
+        this.claimedUrls = claimedUrls;
+        this.pendingUrls = pendingUrls;
+    }
+
+    /**
+     * Журнал для обхода, который не нужно сохранять (переиндексация одной страницы).
+     */
+    public static CrawlCheckpoint disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * Начинает новый журнал, стирая прежний.
+     */
+    public static CrawlCheckpoint start(Path path) throws IOException {
+        Files.createDirectories(path.getParent());
+        return open(path, false, List.of(), List.of());
+    }
+
+    /**
+     * Читает журнал прерванного обхода и продолжает дописывать его.
+     * Последняя строка без перевода строки считается недописанной и пропускается.
+     */
+    public static CrawlCheckpoint resume(Path path) throws IOException {
+        Set<String> claimed = new LinkedHashSet<>();
+        Set<String> processed = new HashSet<>();
+        byte[] log = Files.readAllBytes(path);
+        int complete = log.length;
+        while (complete > 0 && log[complete - 1] != '\n') {
+            complete--;
+        }
+        for (String line : new String(log, 0, complete, StandardCharsets.UTF_8).split("\n")) {
+            if (line.startsWith(CLAIMED)) {
+                claimed.add(line.substring(CLAIMED.length()));
+            } else if (line.startsWith(DONE)) {
+                processed.add(line.substring(DONE.length()));
+            }
+        }
+        List<String> pending = claimed.stream().filter(url -> !processed.contains(url)).toList();
+        try (FileOutputStream truncate = new FileOutputStream(path.toFile(), true)) {
+            truncate.getChannel().truncate(complete);
+        }
+        return open(path, true, List.copyOf(claimed), pending);
+    }
+
+    private static CrawlCheckpoint open(Path path, boolean append, List<String> claimedUrls,
+                                        List<String> pendingUrls) throws IOException {
+        FileOutputStream stream = new FileOutputStream(path.toFile(), append);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+        return new CrawlCheckpoint(path, stream, writer, claimedUrls, pendingUrls);
+    }
+
+    public boolean isEnabled() {
+        return writer != null;
+    }
+
+    /**
+     * Адреса, захваченные до перезапуска, включая обработанные.
+     */
+    public List<String> getClaimedUrls() {
+        return claimedUrls;
+    }
+
+    /**
+     * Захваченные до перезапуска, но не обработанные адреса.
+     */
+    public List<String> getPendingUrls() {
+        return pendingUrls;
+    }
+
+    public synchronized void claimed(String url) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.write(CLAIMED);
+            writer.write(url);
+            writer.write('\n');
+        } catch (IOException e) {
+            System.out.println("Ошибка записи журнала обхода: " + e.getMessage());
+        }
+    }
+
+    public void done(String url) {
+        if (writer != null) {
+            done.add(url);
+        }
+    }
+
+    /**
+     * Забирает отметки об обработанных страницах, накопленные с прошлой контрольной точки.
+     */
+    public List<String> drainDone() {
+        List<String> drained = new ArrayList<>();
+        for (String url = done.poll(); url != null; url = done.poll()) {
+            drained.add(url);
+        }
+        return drained;
+    }
+
+    /**
+     * Записывает отметки об обработанных страницах и сбрасывает журнал на диск.
+     * Вызывается после того, как страницы из processed сохранены в БД.
+     */
+    public synchronized void commit(List<String> processed) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            for (String url : processed) {
+                writer.write(DONE);
+                writer.write(url);
+                writer.write('\n');
+            }
+            writer.flush();
+            stream.getFD().sync();
+        } catch (IOException e) {
+            System.out.println("Ошибка записи журнала обхода: " + e.getMessage());
+        }
+    }
+
+    public synchronized void close() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            System.out.println("Ошибка закрытия журнала обхода: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Обход завершён, возобновлять нечего - журнал удаляется.
+     */
+    public synchronized void complete() {
+        if (writer == null) {
+            return;
+        }
+        close();
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            System.out.println("Ошибка удаления журнала обхода: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package ru.tyabutov.searchengine.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import ru.tyabutov.searchengine.config.CrawlerSettings;
+import ru.tyabutov.searchengine.config.TokenizerSettings;
+import ru.tyabutov.searchengine.config.UserSettings;
+import ru.tyabutov.searchengine.index.IndexWriter;
+import ru.tyabutov.searchengine.repositories.PageContentRepository;
+import ru.tyabutov.searchengine.repositories.PageRepository;
+import ru.tyabutov.searchengine.repositories.SiteRepository;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
+
+/**
+ * Зависимости и состояние, общие для всех задач обхода одного сайта.
+ */
+@Getter
+@RequiredArgsConstructor
+public class CrawlContext {
+    private final SiteRepository siteRepository;
+    private final PageRepository pageRepository;
+    private final PageContentRepository pageContentRepository;
+    private final UserSettings userSettings;
+    private final CrawlerSettings crawlerSettings;
+    private final TokenizerSettings tokenizerSettings;
+    private final AtomicBoolean running;
+    private final LemmaCreator lemmaCreator;
+    private final IndexWriter indexWriter;
+    private final CrawlMetrics metrics;
+    private final VisitedUrls visitedUrls;
+    private final CrawlCheckpoint checkpoint;
+    private final NearDuplicates nearDuplicates;
+    private final HostRateLimiter rateLimiter;
+    private final UrlCanonicalizer urlCanonicalizer;
+    /**
+     * Страницы сайта, сохранённые до начала инкрементального обхода, по адресам.
+     * При полном обходе пусто.
+     */
+    private final Map<String, KnownPage> knownPages;
+    private final IntConsumer pageRemover;
+}
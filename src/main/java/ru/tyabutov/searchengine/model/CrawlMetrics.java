@@ -0,0 +1,125 @@
+package ru.tyabutov.searchengine.model;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntSupplier;
+
+/**
+ * Метрики обхода и записи индекса. Счётчики страниц и байтов размечены сайтом,
+ * задержка загрузки - кодом ответа, ошибки - этапом и типом исключения.
+ * Размер очереди обхода и число активных задач снимаются с текущего обходчика.
+ */
+@Component
+public class CrawlMetrics {
+    private static final IntSupplier IDLE = () -> 0;
+
+    private final MeterRegistry registry;
+    private final Timer lemmatizationTimer;
+    private final DistributionSummary lemmatizedTokens;
+    private final Timer writeTimer;
+    private final DistributionSummary batchPages;
+    private final DistributionSummary batchRows;
+    private final AtomicReference<IntSupplier> frontierSize = new AtomicReference<>(IDLE);
+    private final AtomicReference<IntSupplier> activeTasks = new AtomicReference<>(IDLE);
+
+    public CrawlMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.lemmatizationTimer = Timer.builder("crawler.lemmatization.time")
+                .description("Время лемматизации одной страницы")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.lemmatizedTokens = DistributionSummary.builder("crawler.lemmatization.tokens")
+                .description("Число лемматизированных слов на странице")
+                .register(registry);
+        this.writeTimer = Timer.builder("indexer.write.latency")
+                .description("Время записи одного пакета страниц, лемм и индексов в БД")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.batchPages = DistributionSummary.builder("indexer.batch.pages")
+                .description("Число страниц в пакете записи")
+                .register(registry);
+        this.batchRows = DistributionSummary.builder("indexer.batch.rows")
+                .description("Число строк page, lemma и index в пакете записи")
+                .register(registry);
+        Gauge.builder("crawler.frontier.size", frontierSize, supplier -> supplier.get().getAsInt())
+                .description("Адреса, ожидающие загрузки")
+                .register(registry);
+        Gauge.builder("crawler.active.tasks", activeTasks, supplier -> supplier.get().getAsInt())
+                .description("Задачи обхода, выполняющиеся в данный момент")
+                .register(registry);
+    }
+
+    public void recordFetch(SiteEntity site, String status, long nanos, long bytes) {
+        Timer.builder("crawler.fetch.latency")
+                .description("Время загрузки страницы")
+                .tag("status", status)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        Counter.builder("crawler.pages.fetched").tag("site", site.getUrl()).register(registry).increment();
+        Counter.builder("crawler.bytes.downloaded").baseUnit("bytes").tag("site", site.getUrl())
+                .register(registry).increment(bytes);
+    }
+
+    public void recordIndexed(SiteEntity site) {
+        Counter.builder("crawler.pages.indexed").tag("site", site.getUrl()).register(registry).increment();
+    }
+
+    public void recordDuplicate(SiteEntity site) {
+        Counter.builder("crawler.pages.duplicates").tag("site", site.getUrl()).register(registry).increment();
+    }
+
+    public void recordLemmatization(long nanos, int tokens) {
+        lemmatizationTimer.record(nanos, TimeUnit.NANOSECONDS);
+        lemmatizedTokens.record(tokens);
+    }
+
+    public void recordWrite(long nanos, int pages, int rows) {
+        writeTimer.record(nanos, TimeUnit.NANOSECONDS);
+        batchPages.record(pages);
+        batchRows.record(rows);
+    }
+
+    public void recordDropped(int pages) {
+        Counter.builder("indexer.pages.dropped")
+                .description("Страницы, не записанные в БД после всех попыток")
+                .register(registry)
+                .increment(pages);
+    }
+
+    public void recordError(String stage, Throwable error) {
+        Counter.builder("crawler.errors")
+                .tag("stage", stage)
+                .tag("type", error.getClass().getSimpleName())
+                .register(registry)
+                .increment();
+    }
+
+    public void trackWriterQueue(Collection<?> queue) {
+        Gauge.builder("indexer.queue.size", queue, Collection::size)
+                .description("Страницы, ожидающие записи в БД")
+                .register(registry);
+    }
+
+    /**
+     * Подключает гейджи размера очереди и активных задач к текущему обходу.
+     * После обхода нужно вызвать untrack.
+     */
+    public void track(IntSupplier frontier, IntSupplier active) {
+        frontierSize.set(frontier);
+        activeTasks.set(active);
+    }
+
+    public void untrack() {
+        frontierSize.set(IDLE);
+        activeTasks.set(IDLE);
+    }
+}
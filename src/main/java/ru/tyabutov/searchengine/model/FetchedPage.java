@@ -0,0 +1,11 @@
+package ru.tyabutov.searchengine.model;
+
+import org.jsoup.nodes.Document;
+
+/**
+ * Результат загрузки страницы: разобранный документ и то, что было посчитано
+ * по телу ответа при чтении потока, - SHA-256, сжатое тело и его кодировка.
+ */
+public record FetchedPage(Document document, int statusCode, String etag, String lastModified,
+                          String contentHash, byte[] content, String charset) {
+}
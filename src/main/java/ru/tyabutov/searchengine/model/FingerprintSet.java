@@ -0,0 +1,101 @@
+package ru.tyabutov.searchengine.model;
+
+/**
+ * Множество 64-битных отпечатков без упаковки в объекты: открытая адресация по массиву long,
+ * около 16 байт на элемент вместо строки адреса с узлом хеш-таблицы.
+ * Разбито на полосы по старшим битам отпечатка, у каждой полосы своя блокировка.
+ */
+final class FingerprintSet {
+    private static final int STRIPE_BITS = 6;
+
+    private final Stripe[] stripes = new Stripe[1 << STRIPE_BITS];
+
+    FingerprintSet() {
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Возвращает true, если отпечатка ещё не было.
+     */
+    boolean add(long fingerprint) {
+        return stripe(fingerprint).add(fingerprint);
+    }
+
+    boolean contains(long fingerprint) {
+        return stripe(fingerprint).contains(fingerprint);
+    }
+
+    int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    private Stripe stripe(long fingerprint) {
+        return stripes[(int) (fingerprint >>> (64 - STRIPE_BITS))];
+    }
+
+    /**
+     * 0 служит пустой ячейкой, поэтому сам отпечаток 0 хранится отдельным флагом.
+     */
+    private static final class Stripe {
+        private long[] table = new long[16];
+        private int size;
+        private boolean containsZero;
+
+        private synchronized boolean add(long fingerprint) {
+            if (fingerprint == 0) {
+                if (containsZero) {
+                    return false;
+                }
+                containsZero = true;
+                size++;
+                return true;
+            }
+            int slot = find(table, fingerprint);
+            if (table[slot] == fingerprint) {
+                return false;
+            }
+            table[slot] = fingerprint;
+            size++;
+            if (size * 2 > table.length) {
+                resize();
+            }
+            return true;
+        }
+
+        private synchronized boolean contains(long fingerprint) {
+            return fingerprint == 0 ? containsZero : table[find(table, fingerprint)] == fingerprint;
+        }
+
+        private synchronized int size() {
+            return size;
+        }
+
+        private void resize() {
+            long[] resized = new long[table.length * 2];
+            for (long fingerprint : table) {
+                if (fingerprint != 0) {
+                    resized[find(resized, fingerprint)] = fingerprint;
+                }
+            }
+            table = resized;
+        }
+
+        /**
+         * Ячейка с отпечатком или первая пустая ячейка на пути линейного пробирования.
+         */
+        private static int find(long[] table, long fingerprint) {
+            int mask = table.length - 1;
+            int slot = (int) fingerprint & mask;
+            while (table[slot] != 0 && table[slot] != fingerprint) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+}
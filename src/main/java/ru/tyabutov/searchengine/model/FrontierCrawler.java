@@ -0,0 +1,125 @@
+package ru.tyabutov.searchengine.model;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Обходчик на очереди адресов (frontier) вместо рекурсивных задач ForkJoin.
+ * Диспетчер берёт адреса из ограниченной очереди, не превышая maxInFlight
+ * одновременных загрузок, и планирует каждую на слот ограничителя частоты хоста.
+ * Загрузки выполняются на виртуальных потоках, если JVM их поддерживает,
+ * иначе - на пуле из maxInFlight обычных потоков.
+ */
+public class FrontierCrawler {
+    private static final long POLL_TIMEOUT_MS = 200;
+    private static final long SHUTDOWN_TIMEOUT_MS = 30_000;
+
+    private final BlockingQueue<PageIndexer> frontier;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final AtomicBoolean running;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    public FrontierCrawler(int maxInFlight, int frontierCapacity, AtomicBoolean running) {
+        this.frontier = new LinkedBlockingQueue<>(frontierCapacity);
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.running = running;
+        this.executor = newExecutor(maxInFlight);
+    }
+
+    /**
+     * Ждёт места в очереди, пока индексация не остановлена; после остановки адрес отбрасывается,
+     * иначе задачи, заполнившие очередь, ждали бы диспетчера, который уже не работает.
+     */
+    public void add(SiteEntity site, String url, CrawlContext context) throws InterruptedException {
+        PageIndexer task = new PageIndexer(site, url, context);
+        pending.incrementAndGet();
+        while (!frontier.offer(task, POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            if (!running.get()) {
+                pending.decrementAndGet();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Обходит сайты, добавленные через add, и возвращается, когда очередь опустеет
+     * и все загрузки завершатся или индексация будет остановлена.
+     * После остановки текущим загрузкам даётся SHUTDOWN_TIMEOUT_MS, затем их потоки прерываются.
+     */
+    public void run() throws InterruptedException {
+        try {
+            while (pending.get() > 0 && running.get()) {
+                if (!inFlight.tryAcquire(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    continue;
+                }
+                PageIndexer task = frontier.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (task == null) {
+                    inFlight.release();
+                    continue;
+                }
+                long delay = task.getContext().getRateLimiter().reserve(task.getPath());
+                scheduler.schedule(() -> executor.execute(() -> process(task)), delay, TimeUnit.NANOSECONDS);
+            }
+        } finally {
+            scheduler.shutdownNow();
+            frontier.clear();
+            executor.shutdown();
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                System.out.println("Ошибка FrontierCrawler: загрузки не завершились за "
+                        + SHUTDOWN_TIMEOUT_MS + " мс и будут прерваны");
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    public int frontierSize() {
+        return frontier.size();
+    }
+
+    public int activeTasks() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    private void process(PageIndexer task) {
+        List<String> links = List.of();
+        try {
+            if (running.get()) {
+                links = task.processDoc(task.fetchDoc());
+                task.getContext().getCheckpoint().done(task.getPath());
+            }
+        } catch (Exception e) {
+            task.getContext().getMetrics().recordError("crawl", e);
+            System.out.println("Ошибка FrontierCrawler: " + e.getMessage() + " для страницы " + task.getPath());
+        } finally {
+            inFlight.release();
+        }
+        try {
+            for (String link : links) {
+                if (!running.get()) {
+                    break;
+                }
+                add(task.getSite(), link, task.getContext());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pending.decrementAndGet();
+        }
+    }
+
+    private static ExecutorService newExecutor(int maxInFlight) {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(maxInFlight);
+        }
+    }
+}
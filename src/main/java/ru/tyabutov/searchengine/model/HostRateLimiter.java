@@ -0,0 +1,82 @@
+package ru.tyabutov.searchengine.model;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ограничитель частоты запросов к каждому хосту по схеме token bucket (GCRA).
+ * Запрос резервирует ближайший свободный слот и получает время ожидания до него,
+ * поэтому вызывающий код сам решает, как ждать: усыпить поток или отложить задачу.
+ */
+public class HostRateLimiter {
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final long crawlDelayNanos;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    private static class Bucket {
+        private long theoreticalArrival;
+        private long lastStart;
+
+        private Bucket(long now) {
+            theoreticalArrival = now;
+            lastStart = now - TimeUnit.DAYS.toNanos(1);
+        }
+    }
+
+    public HostRateLimiter(double requestsPerSecond, int burst, long crawlDelayMs) {
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+        this.toleranceNanos = intervalNanos * Math.max(0, burst - 1);
+        this.crawlDelayNanos = TimeUnit.MILLISECONDS.toNanos(crawlDelayMs);
+    }
+
+    /**
+     * Резервирует слот для запроса к хосту адреса и возвращает задержку до него в наносекундах.
+     */
+    public long reserve(String url) {
+        long now = System.nanoTime();
+        Bucket bucket = buckets.computeIfAbsent(host(url), host -> new Bucket(now));
+        synchronized (bucket) {
+            long arrival = Math.max(bucket.theoreticalArrival, now);
+            long start = Math.max(now, Math.max(arrival - toleranceNanos, bucket.lastStart + crawlDelayNanos));
+            bucket.theoreticalArrival = Math.max(arrival, start) + intervalNanos;
+            bucket.lastStart = start;
+            return start - now;
+        }
+    }
+
+    /**
+     * Ждёт своего слота. Ожидание внутри ForkJoinPool идёт через managedBlock,
+     * чтобы пул мог подключить компенсирующий поток вместо спящего.
+     */
+    public void acquire(String url) throws InterruptedException {
+        long deadline = System.nanoTime() + reserve(url);
+        ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+            @Override
+            public boolean block() throws InterruptedException {
+                long remaining = deadline - System.nanoTime();
+                if (remaining > 0) {
+                    TimeUnit.NANOSECONDS.sleep(remaining);
+                }
+                return true;
+            }
+
+            @Override
+            public boolean isReleasable() {
+                return deadline - System.nanoTime() <= 0;
+            }
+        });
+    }
+
+    private static String host(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host == null ? url : host.toLowerCase();
+        } catch (IllegalArgumentException e) {
+            return url;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package ru.tyabutov.searchengine.model;
+
+/**
+ * Сведения об уже сохранённой странице, нужные для повторного обхода без перезагрузки.
+ */
+public record KnownPage(int id, String etag, String lastModified, String contentHash) {
+}
@@ -1,61 +1,119 @@
 package ru.tyabutov.searchengine.model;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.Getter;
 import org.apache.lucene.morphology.LuceneMorphology;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 public class LemmaCreator {
+    private static final String[] SERVICE_PARTS = {"СОЮЗ", "ПРЕДЛ", "ЧАСТ", "МЕЖД"};
+    private static final String NO_LEMMA = "";
+
     private final LuceneMorphology luceneMorph;
 
-    public LemmaCreator(LuceneMorphology luceneMorph) {
+    /**
+     * Общий для индексации и поиска кеш слово -> лемма.
+     * Для служебных частей речи и слов без нормальной формы хранится NO_LEMMA.
+     */
+    @Getter
+    private final Cache<String, String> wordCache;
+
+    public LemmaCreator(LuceneMorphology luceneMorph, long cacheSize) {
         this.luceneMorph = luceneMorph;
+        this.wordCache = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .recordStats()
+                .build();
     }
 
     public Map<String, Integer> getLemmas(String text) {
-        Map<String, Integer> lemmas = new ConcurrentHashMap<>();
-        Map<String, String> wordCache = new ConcurrentHashMap<>();
-
-        Arrays.stream(takeWordsFromText(text))
-                .parallel()
-                .forEach(word -> {
-                    if (word.isEmpty() || wordCache.containsKey(word)) {
-                        return;
-                    }
-                    List<String> wordMorphInfo = luceneMorph.getMorphInfo(word)
-                            .stream()
-                            .filter(w -> !w.contains("СОЮЗ") &&
-                                    !w.contains("ПРЕДЛ") &&
-                                    !w.contains("ЧАСТ") &&
-                                    !w.contains("МЕЖД"))
-                            .toList();
-
-                    if (!wordMorphInfo.isEmpty()) {
-                        wordMorphInfo
-                                .forEach(w -> {
-                                    String lemma = takeLemmaFromWord(word);
-                                    if (lemma != null) {
-                                        lemmas.merge(lemma, 1, Integer::sum);
-                                        wordCache.put(word, lemma);
-                                    }
-                                });
-                    }
-                });
+        Map<String, Integer> lemmas = new HashMap<>();
+
+        forEachWord(text, (word, start, end) -> {
+            String lemma = takeLemmaFromWord(word);
+            if (lemma != null) {
+                lemmas.merge(lemma, 1, Integer::sum);
+            }
+        });
 
         return lemmas;
     }
 
-    public String[] takeWordsFromText(String text) {
-        text = text.toLowerCase();
+    /**
+     * Возвращает для каждой леммы текста пары (начало, конец) всех её вхождений.
+     */
+    public Map<String, int[]> getLemmaOffsets(String text) {
+        Map<String, Positions> positions = new HashMap<>();
+
+        forEachWord(text, (word, start, end) -> {
+            String lemma = takeLemmaFromWord(word);
+            if (lemma != null) {
+                positions.computeIfAbsent(lemma, l -> new Positions()).add(start, end);
+            }
+        });
+
+        Map<String, int[]> offsets = new HashMap<>();
+        positions.forEach((lemma, list) -> offsets.put(lemma, Arrays.copyOf(list.data, list.size)));
+        return offsets;
+    }
+
+    /**
+     * Разбивает текст на слова из строчных русских букв без промежуточных копий текста.
+     */
+    public void forEachWord(String text, WordConsumer consumer) {
+        int length = text.length();
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean isLetter = i < length && isRussianLetter(Character.toLowerCase(text.charAt(i)));
+            if (isLetter && start < 0) {
+                start = i;
+            } else if (!isLetter && start >= 0) {
+                consumer.accept(text.substring(start, i).toLowerCase(), start, i);
+                start = -1;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface WordConsumer {
+        void accept(String word, int start, int end);
+    }
 
-        String regex = "[^а-я]";
-        return text.replaceAll(regex, " ")
-                .split("\\s+");
+    private static boolean isRussianLetter(char c) {
+        return c >= 'а' && c <= 'я';
     }
 
+    private static class Positions {
+        private int[] data = new int[8];
+        private int size;
 
+        private void add(int start, int end) {
+            if (size + 2 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[size++] = start;
+            data[size++] = end;
+        }
+    }
+
+    /**
+     * Возвращает лемму слова или null, если слово - служебная часть речи или не имеет нормальной формы.
+     */
     public String takeLemmaFromWord(String word) {
+        String lemma = wordCache.get(word, this::findLemma);
+        return lemma.isEmpty() ? null : lemma;
+    }
+
+    private String findLemma(String word) {
+        boolean isServicePart = luceneMorph.getMorphInfo(word)
+                .stream()
+                .allMatch(info -> Arrays.stream(SERVICE_PARTS).anyMatch(info::contains));
+        if (isServicePart) {
+            return NO_LEMMA;
+        }
         List<String> wordBaseForms = luceneMorph.getNormalForms(word);
-        return !wordBaseForms.isEmpty() ? wordBaseForms.get(0) : null;
+        return !wordBaseForms.isEmpty() ? wordBaseForms.get(0) : NO_LEMMA;
     }
 }
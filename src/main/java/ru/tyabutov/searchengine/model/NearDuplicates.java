@@ -0,0 +1,111 @@
+package ru.tyabutov.searchengine.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Отпечатки SimHash страниц одного сайта и поиск среди них почти-дубликатов.
+ * Отпечатки на расстоянии Хэмминга не больше maxDistance совпадают хотя бы в одном
+ * из maxDistance + 1 блоков битов, поэтому кандидаты ищутся по точному совпадению блока,
+ * а не перебором всех отпечатков сайта. У каждого адреса хранится один отпечаток:
+ * при повторной индексации изменившейся страницы прежний заменяется новым.
+ */
+public class NearDuplicates {
+    private final int maxDistance;
+    private final List<Map<Long, List<Fingerprint>>> blocks = new ArrayList<>();
+    private final Map<String, Long> fingerprints = new HashMap<>();
+    private final AtomicInteger duplicateCount;
+
+    private record Fingerprint(long value, String path) {
+    }
+
+    /**
+     * Отрицательное maxDistance отключает поиск почти-дубликатов.
+     */
+    public NearDuplicates(int maxDistance, int duplicateCount) {
+        this.maxDistance = Math.min(maxDistance, 63);
+        for (int i = 0; i <= this.maxDistance; i++) {
+            blocks.add(new HashMap<>());
+        }
+        this.duplicateCount = new AtomicInteger(duplicateCount);
+    }
+
+    public static NearDuplicates disabled() {
+        return new NearDuplicates(-1, 0);
+    }
+
+    public boolean isEnabled() {
+        return !blocks.isEmpty();
+    }
+
+    public int getDuplicateCount() {
+        return duplicateCount.get();
+    }
+
+    /**
+     * Запоминает отпечаток страницы, сохранённой до начала обхода.
+     */
+    public synchronized void add(long fingerprint, String path) {
+        if (!isEnabled()) {
+            return;
+        }
+        remove(path);
+        fingerprints.put(path, fingerprint);
+        Fingerprint entry = new Fingerprint(fingerprint, path);
+        for (int i = 0; i < blocks.size(); i++) {
+            blocks.get(i).computeIfAbsent(block(fingerprint, i), key -> new ArrayList<>(1)).add(entry);
+        }
+    }
+
+    /**
+     * Забывает отпечаток страницы, например когда её содержимое изменилось.
+     */
+    public synchronized void remove(String path) {
+        Long fingerprint = fingerprints.remove(path);
+        if (fingerprint == null) {
+            return;
+        }
+        for (int i = 0; i < blocks.size(); i++) {
+            long key = block(fingerprint, i);
+            List<Fingerprint> entries = blocks.get(i).get(key);
+            entries.removeIf(entry -> entry.path().equals(path));
+            if (entries.isEmpty()) {
+                blocks.get(i).remove(key);
+            }
+        }
+    }
+
+    /**
+     * Проверяет, есть ли у страницы почти-дубликат под другим адресом. Если есть, увеличивает
+     * счётчик дубликатов, иначе запоминает отпечаток страницы. Прежний отпечаток этого
+     * адреса в любом случае отбрасывается: он описывает уже заменённое содержимое.
+     * Проверка и добавление атомарны, поэтому из двух одновременно обработанных дубликатов
+     * сохранится только один.
+     */
+    public synchronized boolean isDuplicate(long fingerprint, String path) {
+        if (!isEnabled()) {
+            return false;
+        }
+        remove(path);
+        for (int i = 0; i < blocks.size(); i++) {
+            for (Fingerprint candidate : blocks.get(i).getOrDefault(block(fingerprint, i), List.of())) {
+                if (SimHash.distance(candidate.value(), fingerprint) <= maxDistance) {
+                    duplicateCount.incrementAndGet();
+                    return true;
+                }
+            }
+        }
+        add(fingerprint, path);
+        return false;
+    }
+
+    private long block(long fingerprint, int index) {
+        int from = index * 64 / blocks.size();
+        int to = (index + 1) * 64 / blocks.size();
+        long mask = to - from == 64 ? -1L : (1L << (to - from)) - 1;
+        return (fingerprint >>> from) & mask;
+    }
+}
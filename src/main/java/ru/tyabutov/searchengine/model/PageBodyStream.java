@@ -0,0 +1,96 @@
+package ru.tyabutov.searchengine.model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Поток тела ответа, который по мере чтения парсером считает байты, их SHA-256
+ * и сразу сжимает их. Так несжатое тело целиком в памяти не хранится.
+ */
+public class PageBodyStream extends FilterInputStream {
+    private final MessageDigest digest;
+    private final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    private final DeflaterOutputStream compressor = ContentCodec.compressingStream(compressed);
+    private long size;
+
+    public PageBodyStream(InputStream in) {
+        super(in);
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        int value = super.read();
+        if (value >= 0) {
+            digest.update((byte) value);
+            compressor.write(value);
+            size++;
+        }
+        return value;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int read = super.read(buffer, offset, length);
+        if (read > 0) {
+            digest.update(buffer, offset, read);
+            compressor.write(buffer, offset, read);
+            size += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(count, 8192)];
+        long skipped = 0;
+        while (skipped < count) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, count - skipped));
+            if (read < 0) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public String contentHash() {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Завершает сжатие и возвращает сжатое тело. Вызывается один раз после чтения.
+     */
+    public byte[] compressedContent() throws IOException {
+        compressor.close();
+        return compressed.toByteArray();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            compressor.close();
+        }
+    }
+}
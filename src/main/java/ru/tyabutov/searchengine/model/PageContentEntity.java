@@ -0,0 +1,51 @@
+package ru.tyabutov.searchengine.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Тело страницы, вынесенное из таблицы page: HTML и текст хранятся сжатыми
+ * и читаются только когда нужны сниппет или повторная индексация.
+ * HTML хранится в том виде и в той кодировке, в которых его отдал сервер.
+ */
+@Entity
+@Table(name = "page_content")
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class PageContentEntity {
+    @Id
+    @Column(name = "page_id")
+    private int pageId;
+
+    @ToString.Exclude
+    @Column(name = "content", nullable = false, columnDefinition = "MEDIUMBLOB")
+    private byte[] content;
+
+    @Column(name = "charset", columnDefinition = "VARCHAR(32)")
+    private String charset;
+
+    @ToString.Exclude
+    @Column(name = "text", columnDefinition = "MEDIUMBLOB")
+    private byte[] text;
+
+    @ToString.Exclude
+    @Column(name = "lemma_offsets", columnDefinition = "MEDIUMBLOB")
+    private byte[] lemmaOffsets;
+
+    public static PageContentEntity of(byte[] compressedContent, String charset, String text, byte[] lemmaOffsets) {
+        return new PageContentEntity(0, compressedContent, charset, ContentCodec.compress(text), lemmaOffsets);
+    }
+
+    public String getHtml() {
+        return ContentCodec.decompress(content, charset == null ? StandardCharsets.UTF_8 : Charset.forName(charset));
+    }
+
+    public String getPlainText() {
+        return ContentCodec.decompress(text);
+    }
+}
@@ -25,10 +25,18 @@ public class PageEntity {
     @Column(name = "code", nullable = false)
     private int code;
 
-    @ToString.Exclude
-    @Column(name = "content", nullable = false, columnDefinition = "MEDIUMTEXT")
-    private String content;
-
     @ToString.Exclude
     private String title;
+
+    @Column(name = "etag", columnDefinition = "VARCHAR(255)")
+    private String etag;
+
+    @Column(name = "last_modified", columnDefinition = "VARCHAR(64)")
+    private String lastModified;
+
+    @Column(name = "content_hash", columnDefinition = "CHAR(64)")
+    private String contentHash;
+
+    @Column(name = "simhash")
+    private Long simhash;
 }
@@ -0,0 +1,87 @@
+package ru.tyabutov.searchengine.model;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.NodeFilter;
+
+import java.util.Set;
+
+/**
+ * Видимый текст страницы, разделённый на поля. body - весь видимый текст тела,
+ * включая заголовки, headings - только текст заголовков h1-h6.
+ */
+public record PageFields(String title, String headings, String body) {
+    private static final Set<String> HEADING_TAGS = Set.of("h1", "h2", "h3", "h4", "h5", "h6");
+
+    /**
+     * Собирает текст полей за один обход дерева, не изменяя документ:
+     * элементы из excludedTags пропускаются вместе с содержимым.
+     */
+    public static PageFields extract(Document doc, Set<String> excludedTags) {
+        StringBuilder body = new StringBuilder();
+        StringBuilder headings = new StringBuilder();
+        if (doc.body() != null) {
+            doc.body().filter(new NodeFilter() {
+                private int headingDepth;
+
+                @Override
+                public FilterResult head(Node node, int depth) {
+                    if (node instanceof TextNode textNode) {
+                        appendText(body, textNode.text());
+                        if (headingDepth > 0) {
+                            appendText(headings, textNode.text());
+                        }
+                    } else if (node instanceof Element element) {
+                        if (excludedTags.contains(element.normalName())) {
+                            return FilterResult.SKIP_ENTIRELY;
+                        }
+                        if (element.isBlock() || element.nameIs("br")) {
+                            appendSpace(body);
+                        }
+                        if (HEADING_TAGS.contains(element.normalName())) {
+                            headingDepth++;
+                            appendSpace(headings);
+                        }
+                    }
+                    return FilterResult.CONTINUE;
+                }
+
+                @Override
+                public FilterResult tail(Node node, int depth) {
+                    if (node instanceof Element element) {
+                        if (element.isBlock()) {
+                            appendSpace(body);
+                        }
+                        if (HEADING_TAGS.contains(element.normalName())) {
+                            headingDepth--;
+                        }
+                    }
+                    return FilterResult.CONTINUE;
+                }
+            });
+        }
+        return new PageFields(doc.title(), headings.toString().trim(), body.toString().trim());
+    }
+
+    private static void appendText(StringBuilder builder, String text) {
+        if (text.isBlank()) {
+            appendSpace(builder);
+            return;
+        }
+        if (Character.isWhitespace(text.charAt(0))) {
+            appendSpace(builder);
+        }
+        builder.append(text.strip());
+        if (Character.isWhitespace(text.charAt(text.length() - 1))) {
+            appendSpace(builder);
+        }
+    }
+
+    private static void appendSpace(StringBuilder builder) {
+        if (!builder.isEmpty() && builder.charAt(builder.length() - 1) != ' ') {
+            builder.append(' ');
+        }
+    }
+}
@@ -1,167 +1,263 @@
 package ru.tyabutov.searchengine.model;
 
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import org.jsoup.Connection;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 import org.springframework.transaction.annotation.Transactional;
-import ru.tyabutov.searchengine.config.UserSettings;
-import ru.tyabutov.searchengine.repositories.IndexRepository;
-import ru.tyabutov.searchengine.repositories.LemmaRepository;
-import ru.tyabutov.searchengine.repositories.PageRepository;
-import ru.tyabutov.searchengine.repositories.SiteRepository;
+import ru.tyabutov.searchengine.config.CrawlerSettings;
+import ru.tyabutov.searchengine.config.TokenizerSettings;
+import ru.tyabutov.searchengine.index.TokenOffsets;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.RecursiveTask;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 
 @RequiredArgsConstructor
 public class PageIndexer extends RecursiveTask<Void> {
+    @Getter
     private final SiteEntity site;
+    @Getter
     private final String path;
-    private final SiteRepository siteRepository;
-    private final PageRepository pageRepository;
-    private final LemmaRepository lemmaRepository;
-    private final IndexRepository indexRepository;
-    private final UserSettings userSettings;
-    private final AtomicBoolean running;
-    private final LemmaCreator lemmaCreator;
+    @Getter
+    private final CrawlContext context;
+
+    private static final int HTTP_NOT_MODIFIED = 304;
 
     private final List<PageIndexer> tasks = new ArrayList<>();
 
     @Override
     protected Void compute() {
         try {
-            if (!running.get()) {
-                return null;
-            }
-
-            Document doc = getDoc();
-            if (doc == null) {
+            if (!context.getRunning().get()) {
                 return null;
             }
 
-            createPageWithLemmasAndIndices(doc);
-
-            Elements links = doc.select("a");
-
-            for (Element link : links) {
-                String url = link.absUrl("href");
-                PageEntity page = pageRepository.findByPath(url);
-                if (!url.equals(path) &&
-                        url.contains(path) &&
-                        !url.contains("#") &&
-                        page == null) {
-                    PageIndexer task = new PageIndexer(site, url, siteRepository, pageRepository,
-                            lemmaRepository, indexRepository, userSettings, running, lemmaCreator);
-                    task.fork();
-                    tasks.add(task);
-                }
+            List<String> urls = processDoc(getDoc());
+            context.getCheckpoint().done(path);
+            for (String url : urls) {
+                PageIndexer task = new PageIndexer(site, url, context);
+                task.fork();
+                tasks.add(task);
             }
-            invokeAll(tasks);
         } catch (Exception e) {
+            context.getMetrics().recordError("crawl", e);
             System.out.println("Ошибка compute: " + e.getMessage() + " для страницы " + path);
         }
         for (PageIndexer task : tasks) task.join();
         return null;
     }
 
+    /**
+     * Сохраняет страницу с леммами и возвращает ещё не захваченные ссылки на дочерние страницы.
+     * Ссылки приводятся к каноническому виду до захвата, поэтому варианты одного адреса
+     * (слеш в конце, порядок и метки в запросе, фрагмент) загружаются один раз.
+     */
+    public List<String> processDoc(FetchedPage fetched) {
+        List<String> urls = new ArrayList<>();
+        if (fetched == null) {
+            return urls;
+        }
+
+        Document doc = fetched.document();
+        KnownPage knownPage = context.getKnownPages().get(path);
+        if (knownPage == null) {
+            createPageWithLemmasAndIndices(fetched);
+        } else if (isModified(fetched, knownPage)) {
+            context.getPageRemover().accept(knownPage.id());
+            context.getNearDuplicates().remove(path);
+            createPageWithLemmasAndIndices(fetched);
+        } else if (fetched.statusCode() == HTTP_NOT_MODIFIED) {
+            doc = loadStoredDoc(knownPage);
+            if (doc == null) {
+                return urls;
+            }
+        }
+
+        Elements links = doc.select("a");
+
+        for (Element link : links) {
+            String url = context.getUrlCanonicalizer().canonicalize(link.absUrl("href"));
+            if (url != null &&
+                    !url.equals(path) &&
+                    url.contains(path) &&
+                    context.getVisitedUrls().claim(url)) {
+                context.getCheckpoint().claimed(url);
+                urls.add(url);
+            }
+        }
+        return urls;
+    }
+
+    public FetchedPage getDoc() {
+        try {
+            context.getRateLimiter().acquire(path);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        return fetchDoc();
+    }
 
-    public Document getDoc() {
+    /**
+     * Загружает страницу, не буферизуя тело ответа целиком: парсер читает поток,
+     * который по пути считает хеш и сжимает байты для хранения.
+     * Тело длиннее maxBodySize обрезается, ответы с неподходящим Content-Type пропускаются.
+     */
+    public FetchedPage fetchDoc() {
+        long start = System.nanoTime();
         try {
-            int delay = 500 + (int) (Math.random() * 4500);
-            Thread.sleep(delay);
-            return Jsoup.connect(path)
-                    .userAgent(userSettings.getUser())
-                    .referrer(userSettings.getReferrer())
+            CrawlerSettings settings = context.getCrawlerSettings();
+            Connection connection = Jsoup.connect(path)
+                    .userAgent(context.getUserSettings().getUser())
+                    .referrer(context.getUserSettings().getReferrer())
+                    .maxBodySize(settings.getMaxBodySize())
                     .ignoreContentType(true)
-                    .ignoreHttpErrors(true)
-                    .get();
+                    .ignoreHttpErrors(true);
+            KnownPage knownPage = context.getKnownPages().get(path);
+            if (knownPage != null && knownPage.etag() != null) {
+                connection.header("If-None-Match", knownPage.etag());
+            }
+            if (knownPage != null && knownPage.lastModified() != null) {
+                connection.header("If-Modified-Since", knownPage.lastModified());
+            }
+            Connection.Response response = connection.execute();
+            int statusCode = response.statusCode();
+            if (statusCode != HTTP_NOT_MODIFIED && !isAllowedContentType(response.contentType(), settings)) {
+                response.bodyStream().close();
+                context.getMetrics().recordFetch(site, "skipped", System.nanoTime() - start, 0);
+                return null;
+            }
+            try (PageBodyStream body = new PageBodyStream(response.bodyStream())) {
+                Document doc = Jsoup.parse(body, response.charset(), path);
+                context.getMetrics().recordFetch(site, String.valueOf(statusCode),
+                        System.nanoTime() - start, body.size());
+                return new FetchedPage(doc, statusCode, response.header("ETag"), response.header("Last-Modified"),
+                        body.contentHash(), body.compressedContent(), doc.charset().name());
+            }
         } catch (Exception e) {
+            context.getMetrics().recordFetch(site, "error", System.nanoTime() - start, 0);
+            context.getMetrics().recordError("fetch", e);
             System.out.println("Ошибка getDoc: " + e.getMessage() + " для страницы " + path);
         }
         return null;
     }
 
-    public void createPageWithLemmasAndIndices(Document doc) {
+    /**
+     * Почти-дубликат уже сохранённой страницы сайта (отпечатки SimHash видимого текста
+     * отличаются не больше чем в nearDuplicateDistance битах) не лемматизируется и не сохраняется.
+     */
+    public void createPageWithLemmasAndIndices(FetchedPage fetched) {
         updateStatusTime();
-        PageEntity page = createPage(doc);
-        if (page != null && page.getCode() < 400) {
-            createLemmasAndIndices(page);
+        PageEntity page = createPage(fetched);
+        if (page == null) {
+            return;
         }
+        PageFields fields = PageFields.extract(fetched.document(),
+                Set.copyOf(context.getTokenizerSettings().getExcludedTags()));
+        if (page.getCode() < 400 && !fields.body().isEmpty()) {
+            page.setSimhash(SimHash.fingerprint(fields.body()));
+            if (context.getNearDuplicates().isDuplicate(page.getSimhash(), path)) {
+                context.getMetrics().recordDuplicate(site);
+                return;
+            }
+        }
+        createLemmasAndIndices(page, fetched, fields);
     }
 
     @Transactional
     public void updateStatusTime() {
-        if (running.get()) {
+        if (context.getRunning().get()) {
             site.setStatusTime(LocalDateTime.now());
-            siteRepository.save(site);
+            context.getSiteRepository().save(site);
         }
     }
 
-    @Transactional
-    public PageEntity createPage(Document doc) {
+    public PageEntity createPage(FetchedPage fetched) {
         try {
             PageEntity page = new PageEntity();
             page.setSite(site);
             page.setPath(path);
-            page.setContent(doc.html());
-            page.setCode(doc.connection().response().statusCode());
-            page.setTitle(doc.title());
-            if (pageRepository.findByPath(path) == null) {
-                pageRepository.save(page);
-                return page;
-            }
+            page.setCode(fetched.statusCode());
+            page.setTitle(fetched.document().title());
+            page.setEtag(fetched.etag());
+            page.setLastModified(fetched.lastModified());
+            page.setContentHash(fetched.contentHash());
+            return page;
         } catch (Exception e) {
+            context.getMetrics().recordError("page", e);
             System.out.println("Ошибка createPage: " + e.getMessage() + " для страницы " + path);
             return null;
         }
-        return null;
     }
 
-    @Transactional
-    public void createLemmasAndIndices(PageEntity page) {
+    /**
+     * Лемматизирует только видимый текст страницы. Ранг леммы - взвешенная сумма
+     * её частот в заголовке страницы, в заголовках h1-h6 и в остальном тексте тела.
+     * Позиции для сниппетов берутся из того же прохода по тексту тела.
+     */
+    public void createLemmasAndIndices(PageEntity page, FetchedPage fetched, PageFields fields) {
         try {
-            SiteEntity site = page.getSite();
-            Map<String, Integer> lemmas = lemmaCreator.getLemmas(page.getContent());
-            List<IndexEntity> indicesToSave = new ArrayList<>();
-
-            for (Map.Entry<String, Integer> entry : lemmas.entrySet()) {
-                String lemmaText = entry.getKey();
-                float count = entry.getValue();
-                LemmaEntity lemma = lemmaRepository.findByLemmaAndSiteId(lemmaText, site);
-                if (lemma == null) {
-                    lemma = new LemmaEntity();
-                    lemma.setSite(site);
-                    lemma.setLemma(lemmaText);
-                    lemma.setFrequency(1);
-                } else {
-                    lemma.setFrequency(lemma.getFrequency() + 1);
+            TokenizerSettings settings = context.getTokenizerSettings();
+            Map<String, Float> ranks = new HashMap<>();
+            byte[] lemmaOffsets = null;
+            if (page.getCode() < 400) {
+                long start = System.nanoTime();
+                LemmaCreator lemmaCreator = context.getLemmaCreator();
+                Map<String, int[]> offsets = lemmaCreator.getLemmaOffsets(fields.body());
+                Map<String, Integer> headingCounts = lemmaCreator.getLemmas(fields.headings());
+                int tokens = 0;
+                for (Map.Entry<String, int[]> entry : offsets.entrySet()) {
+                    int count = entry.getValue().length / 2;
+                    int inHeadings = Math.min(count, headingCounts.getOrDefault(entry.getKey(), 0));
+                    ranks.put(entry.getKey(), settings.getBodyWeight() * (count - inHeadings)
+                            + settings.getHeadingWeight() * inHeadings);
+                    tokens += count;
                 }
-                lemmaRepository.save(lemma);
-                findOrCreateIndex(lemma, page, count, indicesToSave);
+                for (Map.Entry<String, Integer> entry : lemmaCreator.getLemmas(fields.title()).entrySet()) {
+                    ranks.merge(entry.getKey(), settings.getTitleWeight() * entry.getValue(), Float::sum);
+                    tokens += entry.getValue();
+                }
+                lemmaOffsets = TokenOffsets.encode(offsets);
+                context.getMetrics().recordLemmatization(System.nanoTime() - start, tokens);
             }
-            indexRepository.saveAll(indicesToSave);
-
+            context.getIndexWriter().write(page,
+                    PageContentEntity.of(fetched.content(), fetched.charset(), fields.body(), lemmaOffsets), ranks);
         } catch (Exception e) {
+            context.getMetrics().recordError("lemmatization", e);
             System.out.println("Ошибка createLemma: " + e.getMessage());
         }
     }
 
-    private void findOrCreateIndex(LemmaEntity lemma, PageEntity page,
-                                   float count, List<IndexEntity> indicesToSave) {
-        IndexEntity index = indexRepository.findByLemmaIdAndPageId(lemma, page);
-        if (index == null) {
-            index = new IndexEntity();
-            index.setPage(page);
-            index.setLemma(lemma);
-            index.setRank(count);
-            indicesToSave.add(index);
+    /**
+     * Страница изменилась, если сервер не ответил 304 и хеш полученного тела
+     * не совпадает с сохранённым.
+     */
+    private boolean isModified(FetchedPage fetched, KnownPage knownPage) {
+        return fetched.statusCode() != HTTP_NOT_MODIFIED
+                && !fetched.contentHash().equals(knownPage.contentHash());
+    }
+
+    private static boolean isAllowedContentType(String contentType, CrawlerSettings settings) {
+        if (contentType == null) {
+            return true;
         }
+        int separator = contentType.indexOf(';');
+        String mimeType = (separator < 0 ? contentType : contentType.substring(0, separator)).trim().toLowerCase();
+        return settings.getAllowedContentTypes().contains(mimeType);
+    }
+
+    private Document loadStoredDoc(KnownPage knownPage) {
+        return context.getPageContentRepository().findById(knownPage.id())
+                .map(content -> Jsoup.parse(content.getHtml(), path))
+                .orElse(null);
     }
 }
@@ -0,0 +1,87 @@
+package ru.tyabutov.searchengine.model;
+
+import java.util.Arrays;
+
+/**
+ * 64-битный отпечаток SimHash текста. Признаки - шинглы из SHINGLE_SIZE подряд идущих слов,
+ * поэтому у почти одинаковых текстов отпечатки отличаются в немногих битах.
+ */
+public final class SimHash {
+    private static final int SHINGLE_SIZE = 3;
+
+    private SimHash() {
+    }
+
+    /**
+     * Отпечаток текста. Слова - последовательности букв и цифр без учёта регистра.
+     * Текст короче шингла даёт отпечаток по отдельным словам, пустой текст - 0.
+     */
+    public static long fingerprint(String text) {
+        long[] words = wordHashes(text);
+        int wordCount = (int) words[words.length - 1];
+        if (wordCount == 0) {
+            return 0;
+        }
+        int shingleSize = Math.min(SHINGLE_SIZE, wordCount);
+        int[] weights = new int[64];
+        for (int i = 0; i + shingleSize <= wordCount; i++) {
+            long shingle = 0;
+            for (int j = 0; j < shingleSize; j++) {
+                shingle = shingle * 0x9e3779b97f4a7c15L + words[i + j];
+            }
+            long hash = mix(shingle);
+            for (int bit = 0; bit < 64; bit++) {
+                weights[bit] += ((hash >>> bit) & 1) == 1 ? 1 : -1;
+            }
+        }
+        long fingerprint = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+
+    public static int distance(long first, long second) {
+        return Long.bitCount(first ^ second);
+    }
+
+    /**
+     * Хеши FNV-1a слов текста. Последний элемент массива - число слов.
+     */
+    private static long[] wordHashes(String text) {
+        long[] hashes = new long[16];
+        int count = 0;
+        long hash = 0;
+        boolean inWord = false;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                if (!inWord) {
+                    hash = 0xcbf29ce484222325L;
+                    inWord = true;
+                }
+                hash ^= Character.toLowerCase(c);
+                hash *= 0x100000001b3L;
+            } else if (inWord) {
+                if (count + 1 == hashes.length) {
+                    hashes = Arrays.copyOf(hashes, hashes.length * 2);
+                }
+                hashes[count++] = hash;
+                inWord = false;
+            }
+        }
+        hashes[hashes.length - 1] = count;
+        return hashes;
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -34,6 +34,9 @@ public class SiteEntity {
     @Column(name = "name", nullable = false, columnDefinition = "VARCHAR(255)")
     private String name;
 
+    @Column(name = "duplicate_pages", nullable = false)
+    private int duplicatePages;
+
     public void setStatus(SiteStatus status) {
         this.status = status;
         this.statusTime = LocalDateTime.now();
@@ -0,0 +1,145 @@
+package ru.tyabutov.searchengine.model;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.StringJoiner;
+
+/**
+ * Приводит адреса к каноническому виду, чтобы один и тот же документ не обходился
+ * под разными адресами: схема и хост в нижнем регистре, порт по умолчанию и фрагмент
+ * отбрасываются, путь нормализуется и хранится без завершающего слеша,
+ * параметры из strippedParams удаляются из запроса и пути (;jsessionid=...),
+ * оставшиеся параметры запроса сортируются.
+ * Имя параметра, заканчивающееся на *, задаёт префикс (utm_*).
+ */
+public class UrlCanonicalizer {
+    private final Set<String> strippedNames = new HashSet<>();
+    private final List<String> strippedPrefixes = new ArrayList<>();
+
+    public UrlCanonicalizer(Collection<String> strippedParams) {
+        for (String param : strippedParams) {
+            String name = param.toLowerCase(Locale.ROOT);
+            if (name.endsWith("*")) {
+                strippedPrefixes.add(name.substring(0, name.length() - 1));
+            } else {
+                strippedNames.add(name);
+            }
+        }
+    }
+
+    /**
+     * Возвращает канонический адрес или null, если это не http(s)-адрес.
+     */
+    public String canonicalize(String url) {
+        URI uri;
+        try {
+            uri = new URI(url.trim().replace(" ", "%20")).normalize();
+        } catch (URISyntaxException e) {
+            return null;
+        }
+        String scheme = uri.getScheme() == null ? null : uri.getScheme().toLowerCase(Locale.ROOT);
+        if (!"http".equals(scheme) && !"https".equals(scheme) || uri.getHost() == null) {
+            return null;
+        }
+        String host = uri.getHost().toLowerCase(Locale.ROOT);
+        if (host.endsWith(".")) {
+            host = host.substring(0, host.length() - 1);
+        }
+        int port = uri.getPort();
+        boolean defaultPort = port == 80 && scheme.equals("http") || port == 443 && scheme.equals("https");
+
+        StringBuilder canonical = new StringBuilder(url.length()).append(scheme).append("://").append(host);
+        if (port >= 0 && !defaultPort) {
+            canonical.append(':').append(port);
+        }
+        canonical.append(canonicalPath(uri.getRawPath()));
+        String query = canonicalQuery(uri.getRawQuery());
+        if (!query.isEmpty()) {
+            canonical.append('?').append(query);
+        }
+        return canonical.toString();
+    }
+
+    private String canonicalPath(String rawPath) {
+        StringBuilder path = new StringBuilder();
+        if (rawPath != null) {
+            for (String segment : rawPath.split("/")) {
+                segment = stripPathParams(segment);
+                if (segment.isEmpty() || segment.equals(".") || segment.equals("..")) {
+                    continue;
+                }
+                path.append('/').append(upperCaseEscapes(segment));
+            }
+        }
+        return path.isEmpty() ? "/" : path.toString();
+    }
+
+    private String stripPathParams(String segment) {
+        int separator = segment.indexOf(';');
+        if (separator < 0) {
+            return segment;
+        }
+        String[] parts = segment.split(";");
+        StringJoiner kept = new StringJoiner(";");
+        kept.add(parts[0]);
+        for (int i = 1; i < parts.length; i++) {
+            if (!parts[i].isEmpty() && !isStripped(parts[i])) {
+                kept.add(parts[i]);
+            }
+        }
+        return kept.toString();
+    }
+
+    private String canonicalQuery(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return "";
+        }
+        List<String> params = new ArrayList<>();
+        for (String param : rawQuery.split("&")) {
+            if (!param.isEmpty() && !isStripped(param)) {
+                params.add(upperCaseEscapes(param));
+            }
+        }
+        params.sort(null);
+        return String.join("&", params);
+    }
+
+    private boolean isStripped(String param) {
+        int separator = param.indexOf('=');
+        String name = (separator < 0 ? param : param.substring(0, separator)).toLowerCase(Locale.ROOT);
+        if (strippedNames.contains(name)) {
+            return true;
+        }
+        for (String prefix : strippedPrefixes) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * %2f и %2F означают одно и то же, поэтому шестнадцатеричные цифры экранирования
+     * приводятся к верхнему регистру.
+     */
+    private static String upperCaseEscapes(String value) {
+        if (value.indexOf('%') < 0) {
+            return value;
+        }
+        char[] chars = value.toCharArray();
+        for (int i = 0; i + 2 < chars.length; i++) {
+            if (chars[i] == '%') {
+                chars[i + 1] = Character.toUpperCase(chars[i + 1]);
+                chars[i + 2] = Character.toUpperCase(chars[i + 2]);
+                i += 2;
+            }
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,61 @@
+package ru.tyabutov.searchengine.model;
+
+import java.util.Collection;
+import java.util.function.Predicate;
+
+/**
+ * Множество адресов, уже захваченных в рамках одного обхода сайта.
+ * Каждый адрес захватывается атомарно ровно один раз.
+ * Адреса хранятся компактно, 64-битными отпечатками: вероятность, что два разных адреса
+ * сайта из n совпадут, около n^2 / 2^65, для миллиона адресов - порядка 10^-8.
+ * Страницы, сохранённые до начала обхода, проверяются через фильтр Блума,
+ * и к БД обращаемся только при его положительном ответе.
+ */
+public class VisitedUrls {
+    private final FingerprintSet claimed = new FingerprintSet();
+    private final BloomFilter persisted;
+    private final Predicate<String> persistedCheck;
+
+    private VisitedUrls(BloomFilter persisted, Predicate<String> persistedCheck) {
+        this.persisted = persisted;
+        this.persistedCheck = persistedCheck;
+    }
+
+    /**
+     * Адреса уже сохранённых страниц хранятся в фильтре Блума,
+     * положительный ответ фильтра подтверждается запросом persistedCheck.
+     */
+    public static VisitedUrls withBloomFilter(Collection<String> persistedPaths, double falsePositiveRate,
+                                              Predicate<String> persistedCheck) {
+        if (persistedPaths.isEmpty()) {
+            return new VisitedUrls(null, null);
+        }
+        BloomFilter bloomFilter = new BloomFilter(persistedPaths.size(), falsePositiveRate);
+        persistedPaths.forEach(bloomFilter::put);
+        return new VisitedUrls(bloomFilter, persistedCheck);
+    }
+
+    /**
+     * Адреса уже сохранённых страниц сразу помечаются как захваченные, БД больше не нужна.
+     */
+    public static VisitedUrls withPersisted(Collection<String> persistedPaths) {
+        VisitedUrls visitedUrls = new VisitedUrls(null, null);
+        persistedPaths.forEach(path -> visitedUrls.claimed.add(BloomFilter.hash(path)));
+        return visitedUrls;
+    }
+
+    public boolean claim(String url) {
+        if (!claimed.add(BloomFilter.hash(url))) {
+            return false;
+        }
+        return persisted == null || !persisted.mightContain(url) || !persistedCheck.test(url);
+    }
+
+    public boolean isClaimed(String url) {
+        return claimed.contains(BloomFilter.hash(url));
+    }
+
+    public int size() {
+        return claimed.size();
+    }
+}
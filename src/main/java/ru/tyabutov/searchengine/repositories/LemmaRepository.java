@@ -12,14 +12,26 @@ import java.util.List;
 
 public interface LemmaRepository extends JpaRepository<LemmaEntity, Integer> {
 
-    @Query("SELECT l FROM LemmaEntity l WHERE l.lemma = :lemma AND l.site = :site")
-    LemmaEntity findByLemmaAndSiteId(@Param("lemma") String lemma, @Param("site") SiteEntity site);
+    @Query("SELECT COUNT(l) FROM LemmaEntity l WHERE l.site = :site")
+    int countBySite(@Param("site") SiteEntity site);
 
-    @Query("SELECT l FROM LemmaEntity l WHERE l.site = :site")
-    List<LemmaEntity> findBySite(@Param("site") SiteEntity site);
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM lemma WHERE site_id = :siteId LIMIT :limit", nativeQuery = true)
+    int deleteChunkBySite(@Param("siteId") int siteId, @Param("limit") int limit);
+
+    @Query(value = "SELECT l.id, l.lemma FROM lemma l JOIN `index` i ON i.lemma_id = l.id " +
+            "WHERE i.page_id = :pageId", nativeQuery = true)
+    List<Object[]> findIdsAndLemmasByPage(@Param("pageId") int pageId);
+
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE lemma l JOIN `index` i ON i.lemma_id = l.id " +
+            "SET l.frequency = l.frequency - 1 WHERE i.page_id = :pageId", nativeQuery = true)
+    int decrementFrequenciesByPage(@Param("pageId") int pageId);
 
     @Transactional
     @Modifying
-    @Query("DELETE FROM LemmaEntity l WHERE l.site = :siteId")
-    void deleteBySite(@Param("siteId") SiteEntity site);
+    @Query(value = "DELETE FROM lemma WHERE id IN (:ids) AND frequency <= 0", nativeQuery = true)
+    int deleteUnusedByIds(@Param("ids") List<Integer> ids);
 }
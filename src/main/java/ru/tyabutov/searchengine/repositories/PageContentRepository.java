@@ -0,0 +1,22 @@
+package ru.tyabutov.searchengine.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import ru.tyabutov.searchengine.model.PageContentEntity;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface PageContentRepository extends JpaRepository<PageContentEntity, Integer> {
+
+    @Query("SELECT c.pageId, c.text, c.lemmaOffsets FROM PageContentEntity c WHERE c.pageId IN :pageIds")
+    List<Object[]> findSnippetSourcesByPageIds(@Param("pageIds") Collection<Integer> pageIds);
+
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM page_content WHERE page_id IN (:pageIds)", nativeQuery = true)
+    int deleteByPageIds(@Param("pageIds") List<Integer> pageIds);
+}
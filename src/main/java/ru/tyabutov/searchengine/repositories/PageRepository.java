@@ -1,6 +1,7 @@
 package ru.tyabutov.searchengine.repositories;
 
 import jakarta.transaction.Transactional;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -13,11 +14,28 @@ import java.util.List;
 public interface PageRepository extends JpaRepository<PageEntity, Integer> {
     PageEntity findByPath(String path);
 
-    @Query("SELECT p FROM PageEntity p WHERE p.site = :site")
-    List<PageEntity> findBySite(@Param("site") SiteEntity site);
+    @Query("SELECT p.path FROM PageEntity p WHERE p.site = :site")
+    List<String> findPathsBySite(@Param("site") SiteEntity site);
+
+    @Query("SELECT p.path, p.id, p.etag, p.lastModified, p.contentHash FROM PageEntity p WHERE p.site = :site")
+    List<Object[]> findKnownPagesBySite(@Param("site") SiteEntity site);
+
+    @Query("SELECT p.path, p.simhash FROM PageEntity p WHERE p.site = :site AND p.simhash IS NOT NULL")
+    List<Object[]> findFingerprintsBySite(@Param("site") SiteEntity site);
+
+    @Query("SELECT COUNT(p) FROM PageEntity p WHERE p.site = :site")
+    int countBySite(@Param("site") SiteEntity site);
+
+    @Query("SELECT p.id FROM PageEntity p WHERE p.site.id = :siteId AND p.id > :lastId ORDER BY p.id")
+    List<Integer> findIdsBySiteAfter(@Param("siteId") int siteId, @Param("lastId") int lastId, Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM page WHERE site_id = :siteId LIMIT :limit", nativeQuery = true)
+    int deleteChunkBySite(@Param("siteId") int siteId, @Param("limit") int limit);
 
     @Modifying
     @Transactional
-    @Query("DELETE FROM PageEntity p WHERE p.site.id = :siteId")
-    void deleteBySite(@Param("siteId") int siteId);
+    @Query(value = "DELETE FROM page WHERE id = :id", nativeQuery = true)
+    int deleteByIdDirectly(@Param("id") int id);
 }
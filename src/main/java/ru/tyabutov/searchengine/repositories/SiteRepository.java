@@ -19,4 +19,9 @@ public interface SiteRepository extends JpaRepository<SiteEntity, Integer> {
     @Modifying
     @Query("DELETE FROM SiteEntity s WHERE s.url = :url")
     void deleteByUrl(String url);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE SiteEntity s SET s.duplicatePages = :count WHERE s.id = :id")
+    void updateDuplicatePages(int id, int count);
 }
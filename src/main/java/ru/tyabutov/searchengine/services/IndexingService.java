@@ -7,5 +7,5 @@ public interface IndexingService {
     Map<String, Object> startIndexing();
     Map<String, Object> stopIndexing();
     Map<String, Object> indexPage(String url);
-    Map<String, Object> search(String query, String site, int offset, int limit);
+    Map<String, Object> search(String query, String site, int offset, int limit, boolean explain);
 }
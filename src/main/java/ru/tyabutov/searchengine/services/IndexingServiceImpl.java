@@ -1,28 +1,60 @@
 package ru.tyabutov.searchengine.services;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.apache.lucene.morphology.LuceneMorphology;
 import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
 import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import ru.tyabutov.searchengine.config.CacheSettings;
+import ru.tyabutov.searchengine.config.CrawlMode;
+import ru.tyabutov.searchengine.config.CrawlerEngine;
+import ru.tyabutov.searchengine.config.CrawlerSettings;
+import ru.tyabutov.searchengine.config.IndexBackend;
+import ru.tyabutov.searchengine.config.ScoringModel;
+import ru.tyabutov.searchengine.config.SearchSettings;
 import ru.tyabutov.searchengine.config.Site;
 import ru.tyabutov.searchengine.config.SitesList;
+import ru.tyabutov.searchengine.config.TokenizerSettings;
 import ru.tyabutov.searchengine.config.UserSettings;
+import ru.tyabutov.searchengine.config.WriterSettings;
+import ru.tyabutov.searchengine.dto.indexing.QueryPlan;
+import ru.tyabutov.searchengine.dto.indexing.SearchCacheKey;
 import ru.tyabutov.searchengine.dto.indexing.SearchContext;
+import ru.tyabutov.searchengine.index.IndexGenerations;
+import ru.tyabutov.searchengine.index.IndexWriter;
+import ru.tyabutov.searchengine.index.Bm25Scorer;
+import ru.tyabutov.searchengine.index.InvertedIndex;
+import ru.tyabutov.searchengine.index.LemmaDictionary;
+import ru.tyabutov.searchengine.index.MaxScoreEvaluator;
+import ru.tyabutov.searchengine.index.PostingSource;
+import ru.tyabutov.searchengine.index.RankSumScorer;
+import ru.tyabutov.searchengine.index.Scorer;
+import ru.tyabutov.searchengine.index.SegmentIndex;
+import ru.tyabutov.searchengine.index.TokenOffsets;
+import ru.tyabutov.searchengine.index.TopK;
 import ru.tyabutov.searchengine.model.*;
 import ru.tyabutov.searchengine.dto.indexing.SearchResult;
 import ru.tyabutov.searchengine.repositories.IndexRepository;
 import ru.tyabutov.searchengine.repositories.LemmaRepository;
+import ru.tyabutov.searchengine.repositories.PageContentRepository;
 import ru.tyabutov.searchengine.repositories.PageRepository;
 import ru.tyabutov.searchengine.repositories.SiteRepository;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 @Service
@@ -30,28 +62,88 @@ public class IndexingServiceImpl implements IndexingService {
 
     private final SitesList sites;
     private final UserSettings userSettings;
+    private final CrawlerSettings crawlerSettings;
+    private final TokenizerSettings tokenizerSettings;
+    private final WriterSettings writerSettings;
     private volatile SiteRepository siteRepository;
     private volatile PageRepository pageRepository;
+    private final PageContentRepository pageContentRepository;
     private volatile LemmaRepository lemmaRepository;
     private volatile IndexRepository indexRepository;
+    private final PostingSource postingSource;
+    private final Scorer scorer;
+    private final SegmentIndex segmentIndex;
+    private final IndexWriter indexWriter;
+    private final LemmaDictionary lemmaDictionary;
+    private final IndexGenerations indexGenerations;
+    private final CrawlMetrics crawlMetrics;
+    private final Cache<SearchCacheKey, Map<String, Object>> searchCache;
     private LuceneMorphology luceneMorph = new RussianLuceneMorphology();
-    private LemmaCreator lemmaCreator = new LemmaCreator(luceneMorph);
+    private final LemmaCreator lemmaCreator;
+    private final HostRateLimiter rateLimiter;
+    private final UrlCanonicalizer urlCanonicalizer;
 
 
     private final AtomicBoolean indexingStarting = new AtomicBoolean(false);
-    private final AtomicBoolean searchStarting = new AtomicBoolean(false);
+    private final SearchSettings searchSettings;
+    private final Semaphore searchPermits;
+    private final ExecutorService searchExecutor;
+    private final ExecutorService siteExecutor;
+    private final MeterRegistry meterRegistry;
     private static final int SNIPPET_LENGTH = 200;
 
     @Autowired
-    public IndexingServiceImpl(SitesList sites, UserSettings userSettings,
+    public IndexingServiceImpl(SitesList sites, UserSettings userSettings, CrawlerSettings crawlerSettings,
+                               TokenizerSettings tokenizerSettings,
                                SiteRepository siteRepository, PageRepository pageRepository,
-                               LemmaRepository lemmaRepository, IndexRepository indexRepository) throws IOException {
+                               PageContentRepository pageContentRepository, LemmaRepository lemmaRepository, IndexRepository indexRepository,
+                               InvertedIndex invertedIndex, SegmentIndex segmentIndex, IndexWriter indexWriter,
+                               LemmaDictionary lemmaDictionary, IndexGenerations indexGenerations,
+                               CacheSettings cacheSettings, SearchSettings searchSettings,
+                               WriterSettings writerSettings, CrawlMetrics crawlMetrics,
+                               MeterRegistry meterRegistry) throws IOException {
         this.sites = sites;
+        this.lemmaCreator = new LemmaCreator(luceneMorph, cacheSettings.getLemmaCacheSize());
+        CaffeineCacheMetrics.monitor(meterRegistry, lemmaCreator.getWordCache(), "lemmas");
+        this.indexGenerations = indexGenerations;
+        this.searchCache = Caffeine.newBuilder()
+                .maximumSize(cacheSettings.getSearchCacheSize())
+                .expireAfterWrite(Duration.ofSeconds(cacheSettings.getSearchCacheTtlSeconds()))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, searchCache, "search");
+        this.searchSettings = searchSettings;
+        this.searchPermits = new Semaphore(searchSettings.getMaxInFlight());
+        this.searchExecutor = new ThreadPoolExecutor(searchSettings.getQueryThreads(),
+                searchSettings.getQueryThreads(), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(searchSettings.getMaxInFlight()));
+        this.siteExecutor = new ThreadPoolExecutor(searchSettings.getSiteThreads(),
+                searchSettings.getSiteThreads(), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(searchSettings.getMaxInFlight()),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.meterRegistry = meterRegistry;
+        meterRegistry.gauge("search.in.flight", searchPermits,
+                permits -> searchSettings.getMaxInFlight() - permits.availablePermits());
         this.userSettings = userSettings;
+        this.crawlerSettings = crawlerSettings;
+        this.tokenizerSettings = tokenizerSettings;
+        this.writerSettings = writerSettings;
+        this.crawlMetrics = crawlMetrics;
+        this.rateLimiter = new HostRateLimiter(crawlerSettings.getRequestsPerSecond(),
+                crawlerSettings.getBurst(), crawlerSettings.getCrawlDelayMs());
+        this.urlCanonicalizer = new UrlCanonicalizer(crawlerSettings.getStrippedQueryParams());
         this.siteRepository = siteRepository;
         this.pageRepository = pageRepository;
+        this.pageContentRepository = pageContentRepository;
         this.lemmaRepository = lemmaRepository;
         this.indexRepository = indexRepository;
+        this.segmentIndex = segmentIndex;
+        this.postingSource = searchSettings.getBackend() == IndexBackend.SEGMENTS ? segmentIndex : invertedIndex;
+        this.scorer = searchSettings.getScoring() == ScoringModel.BM25
+                ? new Bm25Scorer(searchSettings.getBm25K1(), searchSettings.getBm25B())
+                : new RankSumScorer();
+        this.indexWriter = indexWriter;
+        this.lemmaDictionary = lemmaDictionary;
     }
 
     @Override
@@ -67,21 +159,27 @@ public class IndexingServiceImpl implements IndexingService {
     }
 
     private void indexingTask() {
+        List<CrawlContext> contexts = new ArrayList<>();
+        boolean completed = false;
         try {
             List<Site> sitesList = sites.getSites();
             List<SiteEntity> siteEntityList = new ArrayList<>();
-            ForkJoinPool forkJoinPool = new ForkJoinPool();
 
-            for (Site site : sitesList) {
-                SiteEntity siteEntity;
-                String url = site.getUrl();
-                siteEntity = updateSite(site, url, siteEntityList);
-                forkJoinPool.submit(
-                        new PageIndexer(siteEntity, url, siteRepository, pageRepository,
-                                lemmaRepository, indexRepository, userSettings, indexingStarting, lemmaCreator));
-            }
-            forkJoinPool.shutdown();
-            forkJoinPool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            if (crawlerSettings.getEngine() == CrawlerEngine.FRONTIER) {
+                crawlWithFrontier(sitesList, siteEntityList, contexts);
+            } else {
+                crawlWithForkJoin(sitesList, siteEntityList, contexts);
+            }
+            indexWriter.flush();
+            for (int i = 0; i < contexts.size(); i++) {
+                siteRepository.updateDuplicatePages(siteEntityList.get(i).getId(),
+                        contexts.get(i).getNearDuplicates().getDuplicateCount());
+            }
+
+            if (indexingStarting.get()) {
+                contexts.forEach(this::removeUnvisitedPages);
+            }
+            siteEntityList.forEach(siteEntity -> segmentIndex.flush(siteEntity.getId()));
 
             for (SiteEntity siteEntity : siteEntityList) {
                 if (indexingStarting.get()) {
@@ -89,58 +187,330 @@ public class IndexingServiceImpl implements IndexingService {
                     siteRepository.save(siteEntity);
                 }
             }
+            completed = indexingStarting.get();
         } catch (Exception e) {
             errorResponse(e);
         } finally {
+            closeCheckpoints(contexts, completed);
             indexingStarting.set(false);
         }
     }
 
+    private void crawlWithForkJoin(List<Site> sitesList, List<SiteEntity> siteEntityList,
+                                   List<CrawlContext> contexts) throws InterruptedException {
+        ForkJoinPool forkJoinPool = new ForkJoinPool();
+
+        for (Site site : sitesList) {
+            String url = site.getUrl();
+            SiteEntity siteEntity = updateSite(site, url, siteEntityList);
+            CrawlContext context = createCrawlContext(siteEntity);
+            contexts.add(context);
+            for (String seedUrl : seedUrls(siteEntity, context, url)) {
+                forkJoinPool.submit(new PageIndexer(siteEntity, seedUrl, context));
+            }
+        }
+        forkJoinPool.shutdown();
+        crawlMetrics.track(() -> (int) forkJoinPool.getQueuedTaskCount(), forkJoinPool::getActiveThreadCount);
+        ScheduledExecutorService checkpoints = startCheckpoints(contexts);
+        try {
+            forkJoinPool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } finally {
+            stopCheckpoints(checkpoints);
+            crawlMetrics.untrack();
+        }
+    }
+
+    /**
+     * Очередь вмещает все стартовые адреса, даже если при возобновлении их больше frontierCapacity,
+     * иначе добавление до запуска обходчика заблокировалось бы.
+     */
+    private void crawlWithFrontier(List<Site> sitesList, List<SiteEntity> siteEntityList,
+                                   List<CrawlContext> contexts) throws InterruptedException {
+        List<List<String>> seeds = new ArrayList<>();
+        for (Site site : sitesList) {
+            String url = site.getUrl();
+            SiteEntity siteEntity = updateSite(site, url, siteEntityList);
+            CrawlContext context = createCrawlContext(siteEntity);
+            contexts.add(context);
+            seeds.add(seedUrls(siteEntity, context, url));
+        }
+        int seedCount = seeds.stream().mapToInt(List::size).sum();
+        FrontierCrawler crawler = new FrontierCrawler(crawlerSettings.getMaxInFlight(),
+                Math.max(crawlerSettings.getFrontierCapacity(), seedCount), indexingStarting);
+        for (int i = 0; i < contexts.size(); i++) {
+            for (String seedUrl : seeds.get(i)) {
+                crawler.add(siteEntityList.get(i), seedUrl, contexts.get(i));
+            }
+        }
+        crawlMetrics.track(crawler::frontierSize, crawler::activeTasks);
+        ScheduledExecutorService checkpoints = startCheckpoints(contexts);
+        try {
+            crawler.run();
+        } finally {
+            stopCheckpoints(checkpoints);
+            crawlMetrics.untrack();
+        }
+    }
+
+    /**
+     * Захватывает и возвращает адреса, с которых начинается обход сайта:
+     * при возобновлении - необработанные адреса из журнала, иначе - корень сайта.
+     */
+    private List<String> seedUrls(SiteEntity siteEntity, CrawlContext context, String url) {
+        CrawlCheckpoint checkpoint = context.getCheckpoint();
+        if (!checkpoint.getClaimedUrls().isEmpty()) {
+            checkpoint.getClaimedUrls().forEach(context.getVisitedUrls()::claim);
+            removeSavedPendingPages(siteEntity, context, checkpoint.getPendingUrls());
+            return checkpoint.getPendingUrls();
+        }
+        String rootUrl = canonicalPath(url);
+        context.getVisitedUrls().claim(rootUrl);
+        checkpoint.claimed(rootUrl);
+        return List.of(rootUrl);
+    }
+
+    /**
+     * IndexWriter сбрасывает страницы в БД чаще, чем пишутся контрольные точки, поэтому
+     * необработанная по журналу страница уже может быть сохранена, а её ссылки - не захвачены.
+     * Такие страницы удаляются и индексируются заново, иначе в page появилась бы вторая
+     * строка с тем же адресом, а частоты лемм были бы посчитаны дважды.
+     */
+    private void removeSavedPendingPages(SiteEntity siteEntity, CrawlContext context, List<String> pendingUrls) {
+        Set<String> pending = new HashSet<>(pendingUrls);
+        for (Object[] row : pageRepository.findKnownPagesBySite(siteEntity)) {
+            if (pending.contains(canonicalPath((String) row[0]))) {
+                context.getPageRemover().accept((Integer) row[1]);
+            }
+        }
+    }
+
+    private ScheduledExecutorService startCheckpoints(List<CrawlContext> contexts) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        long interval = crawlerSettings.getCheckpointIntervalMs();
+        scheduler.scheduleWithFixedDelay(() -> checkpoint(contexts), interval, interval, TimeUnit.MILLISECONDS);
+        return scheduler;
+    }
+
+    /**
+     * Дожидается текущей контрольной точки, чтобы она не прервалась посередине.
+     */
+    private void stopCheckpoints(ScheduledExecutorService scheduler) throws InterruptedException {
+        scheduler.shutdown();
+        scheduler.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Контрольная точка: забирает отметки об обработанных страницах, дожидается
+     * записи этих страниц в БД и только потом пишет отметки в журналы.
+     * Если запись в БД не подтверждена, отметки отбрасываются и страницы
+     * при возобновлении будут загружены повторно.
+     */
+    private void checkpoint(List<CrawlContext> contexts) {
+        try {
+            List<List<String>> processed = contexts.stream()
+                    .map(context -> context.getCheckpoint().drainDone())
+                    .toList();
+            boolean flushed = indexWriter.flush();
+            for (int i = 0; i < contexts.size(); i++) {
+                contexts.get(i).getCheckpoint().commit(flushed ? processed.get(i) : List.of());
+            }
+        } catch (Exception e) {
+            System.out.println("Ошибка checkpoint: " + e.getMessage());
+        }
+    }
+
+    /**
+     * После завершённого обхода журналы удаляются, после прерванного -
+     * фиксируются и остаются для режима resume.
+     */
+    private void closeCheckpoints(List<CrawlContext> contexts, boolean completed) {
+        if (completed) {
+            contexts.forEach(context -> context.getCheckpoint().complete());
+            return;
+        }
+        checkpoint(contexts);
+        contexts.forEach(context -> context.getCheckpoint().close());
+    }
+
+    private Path checkpointPath(int siteId) {
+        return Paths.get(crawlerSettings.getCheckpointDir()).resolve("site-" + siteId + ".log");
+    }
+
+    /**
+     * В режиме resume продолжает журнал прерванного обхода, иначе начинает новый.
+     * Если журнал открыть не удалось, обход идёт без контрольных точек.
+     */
+    private CrawlCheckpoint openCheckpoint(SiteEntity siteEntity) {
+        Path path = checkpointPath(siteEntity.getId());
+        try {
+            return crawlerSettings.getMode() == CrawlMode.RESUME && Files.exists(path)
+                    ? CrawlCheckpoint.resume(path)
+                    : CrawlCheckpoint.start(path);
+        } catch (IOException e) {
+            System.out.println("Ошибка открытия журнала обхода: " + e.getMessage());
+            return CrawlCheckpoint.disabled();
+        }
+    }
+
+    private CrawlContext createCrawlContext(SiteEntity siteEntity) {
+        if (crawlerSettings.getMode() == CrawlMode.INCREMENTAL) {
+            return createCrawlContext(siteEntity, VisitedUrls.withPersisted(Collections.emptyList()),
+                    loadKnownPages(siteEntity), openCheckpoint(siteEntity), loadNearDuplicates(siteEntity));
+        }
+        List<String> persistedPaths = pageRepository.findPathsBySite(siteEntity);
+        VisitedUrls visitedUrls = crawlerSettings.isBloomFilterEnabled()
+                ? VisitedUrls.withBloomFilter(persistedPaths, crawlerSettings.getBloomFalsePositiveRate(),
+                path -> pageRepository.findByPath(path) != null)
+                : VisitedUrls.withPersisted(persistedPaths);
+        return createCrawlContext(siteEntity, visitedUrls, Collections.emptyMap(), openCheckpoint(siteEntity),
+                loadNearDuplicates(siteEntity));
+    }
+
+    private CrawlContext createCrawlContext(SiteEntity siteEntity, VisitedUrls visitedUrls,
+                                            Map<String, KnownPage> knownPages, CrawlCheckpoint checkpoint,
+                                            NearDuplicates nearDuplicates) {
+        return new CrawlContext(siteRepository, pageRepository, pageContentRepository, userSettings,
+                crawlerSettings, tokenizerSettings, indexingStarting, lemmaCreator, indexWriter, crawlMetrics,
+                visitedUrls, checkpoint, nearDuplicates, rateLimiter, urlCanonicalizer, knownPages,
+                pageId -> deletePage(pageId, siteEntity));
+    }
+
+    /**
+     * Сохранённые страницы сайта по каноническому адресу: обход захватывает
+     * только канонические адреса, а страницы могли быть сохранены до канонизации.
+     * Если несколько сохранённых адресов сводятся к одному, остаётся страница,
+     * чей адрес уже канонический (иначе первая), остальные удаляются как дубликаты.
+     */
+    private Map<String, KnownPage> loadKnownPages(SiteEntity siteEntity) {
+        Map<String, KnownPage> knownPages = new HashMap<>();
+        for (Object[] row : pageRepository.findKnownPagesBySite(siteEntity)) {
+            String path = (String) row[0];
+            String canonicalPath = canonicalPath(path);
+            KnownPage knownPage = new KnownPage((Integer) row[1], (String) row[2], (String) row[3], (String) row[4]);
+            KnownPage previous = knownPages.putIfAbsent(canonicalPath, knownPage);
+            if (previous != null) {
+                boolean keepNew = path.equals(canonicalPath);
+                deletePage((keepNew ? previous : knownPage).id(), siteEntity);
+                if (keepNew) {
+                    knownPages.put(canonicalPath, knownPage);
+                }
+            }
+        }
+        return knownPages;
+    }
+
+    private String canonicalPath(String path) {
+        return Objects.requireNonNullElse(urlCanonicalizer.canonicalize(path), path);
+    }
+
+    /**
+     * Отпечатки уже сохранённых страниц сайта, чтобы дубликаты искались и среди них.
+     * При возобновлении счёт дубликатов продолжается с сохранённого значения.
+     */
+    private NearDuplicates loadNearDuplicates(SiteEntity siteEntity) {
+        NearDuplicates nearDuplicates = new NearDuplicates(crawlerSettings.getNearDuplicateDistance(),
+                crawlerSettings.getMode() == CrawlMode.RESUME ? siteEntity.getDuplicatePages() : 0);
+        if (nearDuplicates.isEnabled()) {
+            for (Object[] row : pageRepository.findFingerprintsBySite(siteEntity)) {
+                nearDuplicates.add((Long) row[1], canonicalPath((String) row[0]));
+            }
+        }
+        return nearDuplicates;
+    }
+
+    /**
+     * После инкрементального обхода удаляет страницы, на которые больше не ведёт ни одна ссылка.
+     * Ключи knownPages канонические, поэтому сравниваются с захваченными адресами напрямую.
+     */
+    private void removeUnvisitedPages(CrawlContext context) {
+        context.getKnownPages().forEach((path, knownPage) -> {
+            if (!context.getVisitedUrls().isClaimed(path)) {
+                context.getPageRemover().accept(knownPage.id());
+            }
+        });
+    }
+
+    /**
+     * В инкрементальном режиме, а также при возобновлении по сохранённому журналу обхода
+     * сайт сохраняется вместе со страницами, в остальных случаях - удаляется и создаётся заново.
+     */
     private SiteEntity updateSite(Site site, String url, List<SiteEntity> siteEntityList) {
         SiteEntity siteEntity = siteRepository.findByUrl(url);
-        if (siteEntity != null) {
-            deleteSite(siteEntity);
+        boolean keep = crawlerSettings.getMode() == CrawlMode.INCREMENTAL
+                || (crawlerSettings.getMode() == CrawlMode.RESUME
+                && siteEntity != null && Files.exists(checkpointPath(siteEntity.getId())));
+        if (siteEntity != null && keep) {
+            siteEntity.setStatus(SiteStatus.INDEXING);
+            siteEntity.setLastError(null);
+            siteRepository.save(siteEntity);
+        } else {
+            if (siteEntity != null) {
+                deleteSite(siteEntity);
+            }
+            siteEntity = createSiteEntity(site);
         }
-        siteEntity = createSiteEntity(site);
         siteEntityList.add(siteEntity);
         return siteEntity;
     }
 
-    @Transactional
+    /**
+     * Удаляет сайт set-based запросами порциями по deleteChunkSize строк,
+     * не загружая сущности страниц.
+     */
     public void deleteSite(SiteEntity siteEntity) {
-        List<PageEntity> pageEntityList
-                = pageRepository.findBySite(siteEntity);
-        for (PageEntity page : pageEntityList) {
-            indexRepository.deleteByPage(page);
+        int siteId = siteEntity.getId();
+        int chunkSize = writerSettings.getDeleteChunkSize();
+
+        List<Integer> pageIds;
+        int lastId = 0;
+        do {
+            pageIds = pageRepository.findIdsBySiteAfter(siteId, lastId, PageRequest.of(0, chunkSize));
+            if (!pageIds.isEmpty()) {
+                indexRepository.deleteByPageIds(pageIds);
+                pageContentRepository.deleteByPageIds(pageIds);
+                lastId = pageIds.get(pageIds.size() - 1);
+            }
+        } while (pageIds.size() == chunkSize);
+
+        while (lemmaRepository.deleteChunkBySite(siteId, chunkSize) == chunkSize) {
+            // удаляем порциями, пока не удалится неполная порция
+        }
+        while (pageRepository.deleteChunkBySite(siteId, chunkSize) == chunkSize) {
+            // удаляем порциями, пока не удалится неполная порция
         }
-        lemmaRepository.deleteBySite(siteEntity);
-        pageRepository.deleteBySite(siteEntity.getId());
         siteRepository.deleteByUrl(siteEntity.getUrl());
+        postingSource.removeSite(siteId);
+        indexGenerations.bump(siteEntity.getUrl());
+        lemmaDictionary.removeSite(siteId);
+        try {
+            Files.deleteIfExists(checkpointPath(siteId));
+        } catch (IOException e) {
+            System.out.println("Ошибка удаления журнала обхода: " + e.getMessage());
+        }
     }
 
+    /**
+     * Удаляет страницу: одним запросом уменьшает частоты всех её лемм,
+     * затем удаляет её индексы, леммы с нулевой частотой и саму страницу.
+     */
     @Transactional
-    public void deletePage(PageEntity page) {
+    public void deletePage(int pageId, SiteEntity siteEntity) {
         try {
-            List<IndexEntity> indexEntityList = indexRepository.findByPage(page);
-
-            for (IndexEntity indexEntity : indexEntityList) {
-                int lemmaId = indexEntity.getLemma().getId();
-                LemmaEntity lemmaEntity =
-                        lemmaRepository.findById(lemmaId).orElse(null);
-                if (lemmaEntity == null) {
-                    continue;
-                }
-                int frequency = lemmaEntity.getFrequency();
-                if (frequency == 1) {
-                    lemmaRepository.deleteById(lemmaId);
-                } else {
-                    lemmaEntity.setFrequency(frequency - 1);
-                    lemmaRepository.save(lemmaEntity);
-                }
+            List<Object[]> lemmas = lemmaRepository.findIdsAndLemmasByPage(pageId);
+            List<Integer> lemmaIds = lemmas.stream().map(row -> ((Number) row[0]).intValue()).toList();
+
+            lemmaRepository.decrementFrequenciesByPage(pageId);
+            indexRepository.deleteByPageIds(List.of(pageId));
+            int chunkSize = writerSettings.getDeleteChunkSize();
+            for (int from = 0; from < lemmaIds.size(); from += chunkSize) {
+                lemmaRepository.deleteUnusedByIds(lemmaIds.subList(from, Math.min(lemmaIds.size(), from + chunkSize)));
             }
+            pageContentRepository.deleteByPageIds(List.of(pageId));
+            pageRepository.deleteByIdDirectly(pageId);
 
-            indexRepository.deleteByPage(page);
-            pageRepository.delete(page);
+            postingSource.removePage(siteEntity.getId(), pageId,
+                    lemmas.stream().map(row -> (String) row[1]).toList());
+            indexGenerations.bump(siteEntity.getUrl());
 
         } catch (Exception e) {
             System.out.println("Ошибка deletePage: " + e.getMessage());
@@ -176,18 +546,30 @@ public class IndexingServiceImpl implements IndexingService {
         }
     }
 
+    /**
+     * Страницы при обходе хранятся под каноническими адресами, поэтому адрес из запроса
+     * сначала приводится к каноническому виду: иначе прежняя строка page не нашлась бы
+     * и страница с её леммами была бы учтена второй раз. Строка, сохранённая под адресом
+     * в том виде, в каком он передан, тоже удаляется.
+     */
     @Transactional
-    public Map<String, Object> indexPage(String url) {
+    public Map<String, Object> indexPage(String rawUrl) {
         try {
             if (indexingStarting.get()) {
                 throw new Exception("Индексация уже запущена");
             }
+            String url = rawUrl == null ? null : urlCanonicalizer.canonicalize(rawUrl);
+            if (url == null) {
+                throw new Exception("Некорректный адрес страницы " + rawUrl);
+            }
 
             indexingStarting.set(true);
 
-            PageEntity page = pageRepository.findByPath(url);
-            if (page != null) {
-                deletePage(page);
+            for (String path : new LinkedHashSet<>(List.of(url, rawUrl))) {
+                PageEntity page = pageRepository.findByPath(path);
+                if (page != null) {
+                    deletePage(page.getId(), page.getSite());
+                }
             }
 
             List<Site> sitesList = sites.getSites();
@@ -195,15 +577,22 @@ public class IndexingServiceImpl implements IndexingService {
 
             for (Site site : sitesList) {
                 String siteUrl = site.getUrl();
-                if (url.contains(siteUrl)) {
+                if (url.contains(siteUrl) || url.startsWith(canonicalPath(siteUrl))) {
                     siteEntity = siteRepository.findByUrl(siteUrl);
                     if (siteEntity == null) {
                         siteEntity = createSiteEntity(site);
                     }
-                    PageIndexer pageIndexer = new PageIndexer(siteEntity, url, siteRepository, pageRepository,
-                            lemmaRepository, indexRepository, userSettings, indexingStarting, lemmaCreator);
-                    Document doc = pageIndexer.getDoc();
-                    pageIndexer.createPageWithLemmasAndIndices(doc);
+                    PageIndexer pageIndexer = new PageIndexer(siteEntity, url,
+                            createCrawlContext(siteEntity, VisitedUrls.withPersisted(Collections.emptyList()),
+                                    Collections.emptyMap(), CrawlCheckpoint.disabled(), NearDuplicates.disabled()));
+                    FetchedPage fetched = pageIndexer.getDoc();
+                    if (fetched == null) {
+                        indexingStarting.set(false);
+                        throw new Exception("Не удалось загрузить страницу " + url);
+                    }
+                    pageIndexer.createPageWithLemmasAndIndices(fetched);
+                    indexWriter.flush();
+                    segmentIndex.flush(siteEntity.getId());
                 }
             }
             indexingStarting.set(false);
@@ -218,37 +607,96 @@ public class IndexingServiceImpl implements IndexingService {
         }
     }
 
+    /**
+     * Выполняет поиск на ограниченном пуле потоков. Если за queueTimeoutMs не освободилось
+     * место среди maxInFlight запросов или запрос не уложился в queryTimeoutMs,
+     * бросает SearchRejectedException.
+     */
     public Map<String, Object> search(String query, String site,
-                                      int offset, int limit) {
+                                      int offset, int limit, boolean explain) {
+        try {
+            if (!searchPermits.tryAcquire(searchSettings.getQueueTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                throw rejectSearch("queue_timeout");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw rejectSearch("interrupted");
+        }
+        Future<Map<String, Object>> future = null;
+        try {
+            future = searchExecutor.submit(() -> executeSearch(query, site, offset, limit, explain));
+            return future.get(searchSettings.getQueryTimeoutMs(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            throw rejectSearch("executor_full");
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw rejectSearch("query_timeout");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw rejectSearch("interrupted");
+        } catch (ExecutionException e) {
+            return errorResponse(new Exception(e.getCause().getMessage()));
+        } finally {
+            searchPermits.release();
+        }
+    }
+
+    private SearchRejectedException rejectSearch(String reason) {
+        meterRegistry.counter("search.rejected", "reason", reason).increment();
+        return new SearchRejectedException("Поисковый сервис перегружен, повторите запрос позже");
+    }
+
+    /**
+     * С explain результат не берётся из кеша и не кладётся в него,
+     * чтобы план отражал фактическое выполнение запроса.
+     */
+    private Map<String, Object> executeSearch(String query, String site,
+                                              int offset, int limit, boolean explain) {
         try {
             validateSearch(query);
-            searchStarting.set(true);
 
             List<String> sitesList = generateSitesList(site);
 
-            SearchContext searchContext = initializeSearchContext(query, sitesList);
+            SearchCacheKey cacheKey = new SearchCacheKey(
+                    lemmaCreator.getLemmas(query).keySet().stream().sorted().toList(),
+                    site, offset, limit, indexGenerations.get(sitesList));
+            Map<String, Object> cachedResult = explain ? null : searchCache.getIfPresent(cacheKey);
+            if (cachedResult != null) {
+                return cachedResult;
+            }
+
+            SearchContext searchContext = initializeSearchContext(query, sitesList, offset + limit);
 
-            if (searchContext.getCombinedFilteredLemmas().isEmpty()) {
+            if (searchContext.getCombinedFilteredLemmas().isEmpty() && searchContext.getTimedOutSites().isEmpty()) {
                 throw new Exception("Не найдено подходящих лемм для данного запроса");
             }
 
-            if (searchContext.getCombinedRelevantPages().isEmpty()) {
-                return Collections.emptyMap();
+            Map<String, Object> result = searchContext.getMatchCount() == 0
+                    ? Collections.emptyMap()
+                    : prepareSearchResult(searchContext, offset, limit);
+            boolean partial = !searchContext.getTimedOutSites().isEmpty();
+            if (partial) {
+                result = new HashMap<>(result);
+                result.put("partial", true);
+                result.put("timedOutSites", searchContext.getTimedOutSites());
             }
-
-            return prepareSearchResult(searchContext, offset, limit);
+            if (explain) {
+                result = new HashMap<>(result);
+                result.put("plan", searchContext.getPlans());
+                return result;
+            }
+            if (!partial) {
+                searchCache.put(cacheKey, result);
+            }
+            return result;
 
         } catch (Exception e) {
             return errorResponse(new Exception(e.getMessage()));
-        } finally {
-            searchStarting.set(false);
         }
     }
 
     private void validateSearch(String query) throws Exception {
-        if (searchStarting.get()) {
-            throw new Exception("Поиск уже запущен");
-        } else if (query.isEmpty()) {
+        if (query == null || query.isEmpty()) {
             throw new Exception("Задан пустой поисковый запрос");
         }
     }
@@ -263,135 +711,353 @@ public class IndexingServiceImpl implements IndexingService {
         return sitesList;
     }
 
-    private SearchContext initializeSearchContext(String query, List<String> sitesList) {
-        Set<PageEntity> combinedRelevantPages = new HashSet<>();
+    private SearchContext initializeSearchContext(String query, List<String> sitesList, int resultLimit)
+            throws Exception {
         List<LemmaEntity> combinedFilteredLemmas = new ArrayList<>();
         List<String> queryWords = new ArrayList<>();
-        Map<PageEntity, SiteEntity> pageToSiteMap = new HashMap<>();
+        SearchContext searchContext = new SearchContext(combinedFilteredLemmas, queryWords, new TopK(resultLimit), 0,
+                new ArrayList<>(), new ArrayList<>());
 
-        updateCombinedRelevantPages(sitesList, query, queryWords,
-                combinedRelevantPages, combinedFilteredLemmas, pageToSiteMap);
+        updateCombinedRelevantPages(sitesList, query, resultLimit, searchContext);
 
-        return new SearchContext(combinedRelevantPages, combinedFilteredLemmas, queryWords, pageToSiteMap);
+        return searchContext;
     }
 
-    private void updateCombinedRelevantPages(List<String> sitesList, String query, List<String> queryWords,
-                                             Set<PageEntity> combinedRelevantPages,
-                                             List<LemmaEntity> combinedFilteredLemmas,
-                                             Map<PageEntity, SiteEntity> pageToSiteMap) {
+    /**
+     * Результат поиска по одному сайту: леммы запроса, найденные на сайте,
+     * план, число кандидатов и лучшие страницы сайта.
+     */
+    private record SiteSearch(List<LemmaEntity> lemmas, QueryPlan plan, int matchCount, TopK topK) {
+    }
 
-        for (String siteUrl : sitesList) {
-            SiteEntity siteEntity = siteRepository.findByUrl(siteUrl);
+    /**
+     * Частоты лемм запроса и число страниц по всем сайтам поиска.
+     */
+    private record CollectionStatistics(Map<String, Integer> documentFrequencies, int pageCount) {
+    }
 
-            List<LemmaEntity> filteredLemmas = getFilteredLemmas(query, siteEntity);
-            combinedFilteredLemmas.addAll(filteredLemmas);
+    /**
+     * Считает idf по всем сайтам поиска, а не по каждому отдельно: иначе одна и та же
+     * лемма весила бы на маленьком и большом сайте по-разному и оценки
+     * в общей выдаче были бы несравнимы.
+     */
+    private CollectionStatistics collectionStatistics(String query, List<String> sitesList) {
+        Set<String> lemmas = lemmaCreator.getLemmas(query).keySet();
+        Map<String, Integer> documentFrequencies = new HashMap<>();
+        int pageCount = 0;
+        for (SiteEntity siteEntity : siteRepository.findAll()) {
+            if (!sitesList.contains(siteEntity.getUrl())) {
+                continue;
+            }
+            pageCount += postingSource.pageCount(siteEntity.getId());
+            for (String lemma : lemmas) {
+                documentFrequencies.merge(lemma, postingSource.documentFrequency(siteEntity.getId(), lemma),
+                        Integer::sum);
+            }
+        }
+        return new CollectionStatistics(documentFrequencies, pageCount);
+    }
 
-            Set<PageEntity> relevantPages = getRelevantPages(filteredLemmas, queryWords);
+    /**
+     * Поиск по сайту, отправленный в siteExecutor; startedAt хранит момент,
+     * когда задача начала выполняться, или NOT_STARTED, пока она ждёт в очереди.
+     */
+    private record SiteTask(Future<SiteSearch> future, long submittedAt, AtomicLong startedAt) {
+    }
 
-            if (relevantPages != null) {
-                combinedRelevantPages.addAll(relevantPages);
-                relevantPages.forEach(page -> pageToSiteMap.put(page, siteEntity));
+    private static final long NOT_STARTED = Long.MIN_VALUE;
+
+    /**
+     * Рассылает поиск по сайтам на пул siteExecutor и собирает лучшие страницы в общую кучу.
+     * Каждому сайту отводится своё siteTimeoutMs: от начала выполнения задачи, а пока она
+     * в очереди — от момента отправки. Не уложившиеся сайты отменяются, а сайты, которые
+     * пул отклонил, дают пустой результат; и те и другие перечисляются в timedOutSites,
+     * а ответ помечается как неполный. Поиск по сайту никогда не выполняется в потоке запроса.
+     */
+    private void updateCombinedRelevantPages(List<String> sitesList, String query, int resultLimit,
+                                             SearchContext searchContext) throws Exception {
+        Map<String, SiteTask> tasks = new LinkedHashMap<>();
+        CollectionStatistics statistics = collectionStatistics(query, sitesList);
+        try {
+            for (String siteUrl : sitesList) {
+                AtomicLong startedAt = new AtomicLong(NOT_STARTED);
+                try {
+                    Future<SiteSearch> future = siteExecutor.submit(() -> {
+                        startedAt.set(System.nanoTime());
+                        return searchSite(siteUrl, query, resultLimit, statistics);
+                    });
+                    tasks.put(siteUrl, new SiteTask(future, System.nanoTime(), startedAt));
+                } catch (RejectedExecutionException e) {
+                    searchContext.getTimedOutSites().add(siteUrl);
+                    meterRegistry.counter("search.site.rejected", "site", siteUrl).increment();
+                }
             }
+            long timeout = TimeUnit.MILLISECONDS.toNanos(searchSettings.getSiteTimeoutMs());
+            for (Map.Entry<String, SiteTask> entry : tasks.entrySet()) {
+                SiteSearch siteSearch;
+                try {
+                    siteSearch = awaitSite(entry.getValue(), timeout);
+                } catch (TimeoutException e) {
+                    entry.getValue().future().cancel(true);
+                    searchContext.getTimedOutSites().add(entry.getKey());
+                    meterRegistry.counter("search.site.timeouts", "site", entry.getKey()).increment();
+                    continue;
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception cause ? cause : e;
+                }
+                searchContext.getCombinedFilteredLemmas().addAll(siteSearch.lemmas());
+                siteSearch.lemmas().forEach(lemma -> searchContext.getQueryWords().add(lemma.getLemma()));
+                if (siteSearch.plan() != null) {
+                    searchContext.getPlans().add(siteSearch.plan());
+                }
+                searchContext.setMatchCount(searchContext.getMatchCount() + siteSearch.matchCount());
+                searchContext.getTopK().offerAll(siteSearch.topK());
+            }
+        } finally {
+            tasks.values().forEach(task -> task.future().cancel(true));
         }
     }
 
+    /**
+     * Ждёт результат сайта до его собственного срока. Если задача успела начаться,
+     * пока мы ждали по сроку очереди, срок переносится на начало выполнения.
+     */
+    private static SiteSearch awaitSite(SiteTask task, long timeout)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        while (true) {
+            long started = task.startedAt().get();
+            long deadline = (started == NOT_STARTED ? task.submittedAt() : started) + timeout;
+            try {
+                return task.future().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                if (task.startedAt().get() == started) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Из отобранных offset + limit самых релевантных страниц только для окна
+     * offset..offset + limit загружает страницы и строит сниппеты.
+     */
     private Map<String, Object> prepareSearchResult(SearchContext searchContext, int offset, int limit) {
-        Map<PageEntity, Double> relevanceMap =
-                calculateRelevance(searchContext.getCombinedRelevantPages(), searchContext.getCombinedFilteredLemmas());
-        double maxRelevance = relevanceMap.values().stream().max(Double::compareTo).orElse(0.0);
+        TopK topK = searchContext.getTopK();
+        int count = searchContext.getMatchCount();
+        int[] topIds = topK.sortedIds();
+        float[] topScores = topK.sortedScores();
+        double maxRelevance = topScores.length == 0 ? 0 : topScores[0];
+        Map<Integer, Float> relevance = new HashMap<>();
+        for (int i = 0; i < topIds.length; i++) {
+            relevance.put(topIds[i], topScores[i]);
+        }
 
-        List<SearchResult> results = relevanceMap.entrySet().stream()
-                .parallel()
-                .map(entry -> createSearchResult(entry, searchContext.getQueryWords(),
-                        searchContext.getPageToSiteMap(), maxRelevance))
-                .sorted(Comparator.comparingDouble(SearchResult::getRelevance).reversed())
-                .collect(Collectors.toList());
-        int count = results.size();
+        List<Integer> windowIds = Arrays.stream(topIds).skip(offset).boxed().toList();
+        Map<Integer, PageEntity> pages = pageRepository.findAllById(windowIds).stream()
+                .collect(Collectors.toMap(PageEntity::getId, page -> page));
+        Map<Integer, Object[]> snippetSources = windowIds.isEmpty() ? Collections.emptyMap()
+                : pageContentRepository.findSnippetSourcesByPageIds(windowIds).stream()
+                .collect(Collectors.toMap(row -> (Integer) row[0], row -> row));
 
-        List<SearchResult> newResults = results.subList(offset, Math.min(offset + limit, count));
+        List<SearchResult> results = windowIds.stream()
+                .map(pages::get)
+                .filter(Objects::nonNull)
+                .map(page -> createSearchResult(page, snippetSources.get(page.getId()),
+                        relevance.get(page.getId()), searchContext.getQueryWords(), maxRelevance))
+                .toList();
 
         return new HashMap<>() {{
             put("result", "true");
             put("count", String.valueOf(count));
-            put("data", count <= limit ? results : newResults);
+            put("data", results);
         }};
     }
 
-    private Map<PageEntity, Double> calculateRelevance(Set<PageEntity> combinedRelevantPages,
-                                                       List<LemmaEntity> combinedFilteredLemmas) {
-        Map<PageEntity, Double> relevanceMap = new HashMap<>();
-
-        for (PageEntity page : combinedRelevantPages) {
-            double pageRelevance = combinedFilteredLemmas.stream()
-                    .mapToDouble(lemma -> {
-                        IndexEntity indexEntity = indexRepository.findByLemmaIdAndPageId(lemma, page);
-                        return indexEntity != null ? indexEntity.getRank() : 0.0;
-                    })
-                    .sum();
-            relevanceMap.put(page, pageRelevance);
-        }
-        return relevanceMap;
-    }
-
-    private SearchResult createSearchResult(Map.Entry<PageEntity, Double> entry, List<String> queryWords,
-                                            Map<PageEntity, SiteEntity> pageToSiteMap, double maxRelevance) {
-        SiteEntity siteEntity = pageToSiteMap.get(entry.getKey());
-        double normalizedRelevance = entry.getValue() / maxRelevance;
+    private SearchResult createSearchResult(PageEntity page, Object[] snippetSource, double relevance,
+                                            List<String> queryWords, double maxRelevance) {
+        SiteEntity siteEntity = page.getSite();
+        double normalizedRelevance = relevance / maxRelevance;
         return new SearchResult(
                 siteEntity != null ? siteEntity.getUrl() : "",
                 siteEntity != null ? siteEntity.getName() : "",
-                entry.getKey().getPath().replaceAll(siteEntity != null ? siteEntity.getUrl() : "", ""),
-                entry.getKey().getTitle(),
-                generateSnippet(entry.getKey(), queryWords),
+                page.getPath().replaceAll(siteEntity != null ? siteEntity.getUrl() : "", ""),
+                page.getTitle(),
+                generateSnippet(page, snippetSource, queryWords),
                 normalizedRelevance
         );
     }
 
+    /**
+     * Частоты лемм берутся из источника списков страниц, а не из таблицы lemma,
+     * поэтому поиск не обращается к БД до загрузки страниц выдачи.
+     */
     private List<LemmaEntity> getFilteredLemmas(String query, SiteEntity siteEntity) {
 
         Map<String, Integer> words = lemmaCreator.getLemmas(query);
 
         return words.keySet().stream()
-                .parallel()
-                .map(lemma -> lemmaRepository.findByLemmaAndSiteId(lemma, siteEntity))
+                .map(lemma -> {
+                    int frequency = postingSource.documentFrequency(siteEntity.getId(), lemma);
+                    return frequency == 0 ? null : new LemmaEntity(0, siteEntity, lemma, frequency);
+                })
                 .filter(Objects::nonNull)
                 .sorted(Comparator.comparing(LemmaEntity::getFrequency))
                 .toList();
     }
 
-    private Set<PageEntity> getRelevantPages(List<LemmaEntity> filteredLemmas, List<String> queryWords) {
+    /**
+     * Кандидаты сайта отбираются пересечением списков лемм плана, после чего
+     * оцениваются по всем леммам запроса выбранной моделью релевантности.
+     * Выполняется в потоке siteExecutor.
+     */
+    private SiteSearch searchSite(String siteUrl, String query, int resultLimit,
+                                  CollectionStatistics statistics) {
+        SiteEntity siteEntity = siteRepository.findByUrl(siteUrl);
+        List<LemmaEntity> filteredLemmas = getFilteredLemmas(query, siteEntity);
+        TopK topK = new TopK(resultLimit);
+        if (filteredLemmas.isEmpty()) {
+            return new SiteSearch(filteredLemmas, null, 0, topK);
+        }
+        QueryPlan plan = planQuery(siteEntity, filteredLemmas);
         try {
-            if (filteredLemmas.isEmpty()) {
-                return null;
-            }
-            for (LemmaEntity lemma : filteredLemmas) {
-                queryWords.add(lemma.getLemma());
-            }
-
-            Set<PageEntity> relevantPages =
-                    indexRepository.findByLemma(filteredLemmas.get(0))
-                            .stream().filter(Objects::nonNull)
-                            .map(IndexEntity::getPage)
-                            .collect(Collectors.toSet());
-            for (LemmaEntity filteredLemma : filteredLemmas) {
-                if (filteredLemma != null) {
-                    Set<PageEntity> pagesWithLemma = indexRepository.findByLemma(filteredLemma)
-                            .stream()
-                            .map(IndexEntity::getPage)
-                            .collect(Collectors.toSet());
-
-                    relevantPages.retainAll(pagesWithLemma);
+            List<String> lemmas = filteredLemmas.stream()
+                    .map(LemmaEntity::getLemma)
+                    .toList();
+            List<String> intersected = plan.getIntersected().stream().map(QueryPlan.LemmaPlan::lemma).toList();
+
+            int[] documentFrequencies = lemmas.stream()
+                    .mapToInt(lemma -> statistics.documentFrequencies().getOrDefault(lemma, 0))
+                    .toArray();
+
+            int[] pageIds = postingSource.findPages(siteEntity.getId(), intersected);
+            int pruned = MaxScoreEvaluator.evaluate(postingSource.rankingView(siteEntity.getId(), lemmas),
+                    documentFrequencies, statistics.pageCount(), pageIds, scorer, topK);
+            meterRegistry.counter("search.candidates.pruned").increment(pruned);
+            plan.setCandidates(pageIds.length);
+            plan.setPruned(pruned);
+            return new SiteSearch(filteredLemmas, plan, pageIds.length, topK);
+        } catch (Exception e) {
+            System.out.println("Ошибка searchSite " + e.getMessage());
+            return new SiteSearch(filteredLemmas, plan, 0, new TopK(resultLimit));
+        }
+    }
+
+    /**
+     * Делит леммы, отсортированные по возрастанию частоты, на пересекаемые и отложенные.
+     * Лемма откладывается, если встречается на доле страниц сайта больше maxLemmaPageShare,
+     * но самая редкая лемма пересекается всегда.
+     */
+    private QueryPlan planQuery(SiteEntity siteEntity, List<LemmaEntity> filteredLemmas) {
+        int pageCount = postingSource.pageCount(siteEntity.getId());
+        double maxShare = searchSettings.getMaxLemmaPageShare();
+        List<QueryPlan.LemmaPlan> intersected = new ArrayList<>();
+        List<QueryPlan.LemmaPlan> deferred = new ArrayList<>();
+        for (LemmaEntity lemma : filteredLemmas) {
+            double share = pageCount == 0 ? 0 : (double) lemma.getFrequency() / pageCount;
+            QueryPlan.LemmaPlan lemmaPlan = new QueryPlan.LemmaPlan(lemma.getLemma(), lemma.getFrequency(), share);
+            if (intersected.isEmpty() || share <= maxShare) {
+                intersected.add(lemmaPlan);
+            } else {
+                deferred.add(lemmaPlan);
+            }
+        }
+        return new QueryPlan(siteEntity.getUrl(), pageCount, maxShare, intersected, deferred, 0, 0);
+    }
+
+    /**
+     * snippetSource — строка (page_id, сжатый текст, смещения лемм) из page_content.
+     */
+    private String generateSnippet(PageEntity page, Object[] snippetSource, List<String> queryWords) {
+        byte[] text = snippetSource == null ? null : (byte[]) snippetSource[1];
+        byte[] lemmaOffsets = snippetSource == null ? null : (byte[]) snippetSource[2];
+        if (text == null || lemmaOffsets == null) {
+            return generateSnippetFromContent(page, queryWords);
+        }
+        Map<String, int[]> offsets = TokenOffsets.decode(lemmaOffsets, queryWords);
+        return buildSnippet(ContentCodec.decompress(text), new ArrayList<>(offsets.values()));
+    }
+
+    /**
+     * Вырезает из текста окно длиной SNIPPET_LENGTH, в котором встречается
+     * больше всего разных лемм запроса, и выделяет их вхождения.
+     */
+    static String buildSnippet(String text, List<int[]> offsets) {
+        int total = offsets.stream().mapToInt(positions -> positions.length / 2).sum();
+        if (total == 0) {
+            return "";
+        }
+        int[] starts = new int[total];
+        int[] ends = new int[total];
+        int[] lemmas = new int[total];
+        Integer[] order = new Integer[total];
+        int index = 0;
+        for (int lemma = 0; lemma < offsets.size(); lemma++) {
+            int[] positions = offsets.get(lemma);
+            for (int i = 0; i < positions.length; i += 2) {
+                starts[index] = positions[i];
+                ends[index] = positions[i + 1];
+                lemmas[index] = lemma;
+                order[index] = index;
+                index++;
+            }
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> starts[i]));
+
+        int[] lemmaCounts = new int[offsets.size()];
+        int distinct = 0;
+        int bestFirst = 0;
+        int bestDistinct = 0;
+        int bestHits = 0;
+        int last = 0;
+        for (int first = 0; first < total; first++) {
+            while (last < total && ends[order[last]] - starts[order[first]] <= SNIPPET_LENGTH) {
+                if (lemmaCounts[lemmas[order[last]]]++ == 0) {
+                    distinct++;
                 }
+                last++;
+            }
+            if (distinct > bestDistinct || (distinct == bestDistinct && last - first > bestHits)) {
+                bestFirst = first;
+                bestDistinct = distinct;
+                bestHits = last - first;
+            }
+            if (--lemmaCounts[lemmas[order[first]]] == 0) {
+                distinct--;
             }
-            return relevantPages;
-        } catch (Exception e) {
-            System.out.println("Ошибка getRelevantPages " + e.getMessage());
         }
-        return null;
+
+        int windowStart = starts[order[bestFirst]];
+        int windowEnd = Math.min(text.length(), windowStart + SNIPPET_LENGTH);
+        if (windowEnd < text.length()) {
+            int space = text.lastIndexOf(' ', windowEnd);
+            if (space > windowStart) {
+                windowEnd = space;
+            }
+        }
+
+        StringBuilder snippet = new StringBuilder();
+        int position = windowStart;
+        for (int i = bestFirst; i < total && ends[order[i]] <= windowEnd; i++) {
+            int start = starts[order[i]];
+            int end = ends[order[i]];
+            if (start < position) {
+                continue;
+            }
+            snippet.append(text, position, start)
+                    .append("<b>").append(text, start, end).append("</b>");
+            position = end;
+        }
+        return snippet.append(text, position, windowEnd).toString();
     }
 
-    private String generateSnippet(PageEntity page, List<String> queryWords) {
-        String text = Jsoup.parse(page.getContent()).text();
+    private String generateSnippetFromContent(PageEntity page, List<String> queryWords) {
+        String html = pageContentRepository.findById(page.getId())
+                .map(PageContentEntity::getHtml)
+                .orElse(null);
+        if (html == null) {
+            return "";
+        }
+        String text = Jsoup.parse(html).text();
         StringBuilder snippet = new StringBuilder();
         int snippetLength = SNIPPET_LENGTH;
 
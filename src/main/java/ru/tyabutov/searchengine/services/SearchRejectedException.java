@@ -0,0 +1,12 @@
+package ru.tyabutov.searchengine.services;
+
+/**
+ * Поисковый запрос отклонён из-за перегрузки: не дождался очереди или не уложился во время.
+ */
+public class SearchRejectedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public SearchRejectedException(String message) {
+        super(message);
+    }
+}
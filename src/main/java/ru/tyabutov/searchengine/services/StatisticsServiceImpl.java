@@ -8,8 +8,6 @@ import ru.tyabutov.searchengine.dto.statistics.DetailedStatisticsItem;
 import ru.tyabutov.searchengine.dto.statistics.StatisticsData;
 import ru.tyabutov.searchengine.dto.statistics.StatisticsResponse;
 import ru.tyabutov.searchengine.dto.statistics.TotalStatistics;
-import ru.tyabutov.searchengine.model.LemmaEntity;
-import ru.tyabutov.searchengine.model.PageEntity;
 import ru.tyabutov.searchengine.model.SiteEntity;
 import ru.tyabutov.searchengine.repositories.LemmaRepository;
 import ru.tyabutov.searchengine.repositories.PageRepository;
@@ -58,18 +56,18 @@ public class StatisticsServiceImpl implements StatisticsService {
         if (siteRepository.findByUrl(site.getUrl()) == null) {
             item.setPages(0);
             item.setLemmas(0);
+            item.setDuplicates(0);
             item.setStatus(null);
             item.setError(null);
             item.setStatusTime(0);
         } else {
             siteEntity = siteRepository.findByUrl(site.getUrl());
-            List<PageEntity> pageEntityList = pageRepository.findBySite(siteEntity);
-            int pages = pageEntityList.size();
+            int pages = pageRepository.countBySite(siteEntity);
             item.setPages(pages);
 
-            List<LemmaEntity> lemmaEntityList = lemmaRepository.findBySite(siteEntity);
-            int lemmas = lemmaEntityList.size();
+            int lemmas = lemmaRepository.countBySite(siteEntity);
             item.setLemmas(lemmas);
+            item.setDuplicates(siteEntity.getDuplicatePages());
 
             item.setStatus(siteEntity.getStatus().toString());
             item.setError(siteEntity.getLastError());
@@ -0,0 +1,120 @@
+package ru.tyabutov.searchengine.index;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import ru.tyabutov.searchengine.config.SearchSettings;
+import ru.tyabutov.searchengine.config.WriterSettings;
+import ru.tyabutov.searchengine.model.CrawlMetrics;
+import ru.tyabutov.searchengine.model.PageContentEntity;
+import ru.tyabutov.searchengine.model.PageEntity;
+import ru.tyabutov.searchengine.model.SiteEntity;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class IndexWriterTest {
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final InvertedIndex invertedIndex = new InvertedIndex(null, new SearchSettings());
+    private final LemmaDictionary lemmaDictionary = new LemmaDictionary(jdbcTemplate);
+    private final SiteEntity site = new SiteEntity();
+    private IndexWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        WriterSettings settings = new WriterSettings();
+        settings.setRetryBackoffMs(1);
+        settings.setBatchSize(2);
+        writer = new IndexWriter(jdbcTemplate, transactionManager, invertedIndex, lemmaDictionary,
+                new IndexGenerations(), settings, new CrawlMetrics(new SimpleMeterRegistry()));
+        writer.start();
+        site.setId(1);
+        site.setUrl("https://site.ru");
+    }
+
+    @AfterEach
+    void tearDown() {
+        writer.stop();
+    }
+
+    @Test
+    void failedBatchIsRetried() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new DataAccessResourceFailureException("соединение потеряно");
+            }
+            return new int[0];
+        });
+
+        writer.write(page("https://site.ru/a"), content(), Map.of("дом", 1f));
+        assertTrue(writer.flush());
+
+        assertArrayEquals(new int[]{1}, invertedIndex.findPages(1, List.of("дом")));
+        verify(jdbcTemplate, times(1)).batchUpdate(startsWith("INSERT INTO lemma"),
+                argThat((List<Object[]> rows) -> rows.size() == 1 && (Long) rows.get(0)[3] == 1L));
+    }
+
+    @Test
+    void droppedBatchDoesNotCountLemmas() throws Exception {
+        when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+                .thenThrow(new DataAccessResourceFailureException("соединение потеряно"));
+
+        writer.write(page("https://site.ru/a"), content(), Map.of("дом", 1f, "кот", 2f));
+        assertFalse(writer.flush());
+
+        assertEquals(0, invertedIndex.pageCount(1));
+        verify(jdbcTemplate, never()).batchUpdate(startsWith("INSERT INTO lemma"), anyList());
+        assertTrue(writer.flush());
+    }
+
+    @Test
+    void droppedBatchAfterWrittenBatchKeepsFrequenciesExact() throws Exception {
+        Map<String, Long> frequencies = new ConcurrentHashMap<>();
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+            String sql = invocation.getArgument(0);
+            List<Object[]> rows = invocation.getArgument(1);
+            if (sql.startsWith("INSERT INTO page ") && rows.stream().anyMatch(row -> row[2].equals("https://site.ru/b"))) {
+                throw new DataAccessResourceFailureException("соединение потеряно");
+            }
+            if (sql.startsWith("INSERT INTO lemma")) {
+                rows.forEach(row -> frequencies.merge((String) row[2], (Long) row[3], Long::sum));
+            }
+            return new int[0];
+        });
+
+        writer.write(page("https://site.ru/a"), content(), Map.of("дом", 1f));
+        writer.write(page("https://site.ru/b"), content(), Map.of("дом", 1f, "кот", 2f));
+        assertFalse(writer.flush());
+        writer.write(page("https://site.ru/c"), content(), Map.of("кот", 1f));
+        assertTrue(writer.flush());
+
+        assertEquals(Map.of("дом", 1L, "кот", 1L), frequencies);
+        assertEquals(2, invertedIndex.pageCount(1));
+    }
+
+    private PageEntity page(String path) {
+        PageEntity page = new PageEntity();
+        page.setSite(site);
+        page.setPath(path);
+        page.setCode(200);
+        return page;
+    }
+
+    private static PageContentEntity content() {
+        return PageContentEntity.of(new byte[0], "UTF-8", "", null);
+    }
+}
@@ -0,0 +1,57 @@
+package ru.tyabutov.searchengine.index;
+
+import org.junit.jupiter.api.Test;
+import ru.tyabutov.searchengine.config.SearchSettings;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InvertedIndexTest {
+
+    @Test
+    void intersectMatchesSetIntersection() {
+        Random random = new Random(11);
+        for (int round = 0; round < 50; round++) {
+            int[] smaller = randomSorted(random, 1 + random.nextInt(50), 10_000);
+            int[] larger = randomSorted(random, 1 + random.nextInt(5_000), 10_000);
+            int[] expected = IntStream.of(smaller).filter(pageId -> Arrays.binarySearch(larger, pageId) >= 0).toArray();
+            assertArrayEquals(expected, InvertedIndex.intersect(smaller, larger), "round " + round);
+        }
+    }
+
+    @Test
+    void intersectHandlesEdges() {
+        assertArrayEquals(new int[0], InvertedIndex.intersect(new int[0], new int[]{1, 2}));
+        assertArrayEquals(new int[0], InvertedIndex.intersect(new int[]{5}, new int[0]));
+        assertArrayEquals(new int[]{1, 9}, InvertedIndex.intersect(new int[]{1, 9}, new int[]{1, 2, 3, 4, 5, 6, 7, 8, 9}));
+        assertArrayEquals(new int[0], InvertedIndex.intersect(new int[]{10, 11}, new int[]{1, 2, 3}));
+    }
+
+    @Test
+    void findPagesIntersectsAllLemmas() {
+        InvertedIndex index = new InvertedIndex(null, new SearchSettings());
+        index.addPage(1, 1, Map.of("дом", 1f, "кот", 2f));
+        index.addPage(1, 2, Map.of("дом", 1f));
+        index.addPage(1, 3, Map.of("дом", 3f, "кот", 1f, "сад", 1f));
+        index.addPage(2, 4, Map.of("дом", 1f, "кот", 1f));
+
+        assertArrayEquals(new int[]{1, 3}, index.findPages(1, List.of("дом", "кот")));
+        assertArrayEquals(new int[]{3}, index.findPages(1, List.of("сад", "дом", "кот")));
+        assertArrayEquals(new int[0], index.findPages(1, List.of("дом", "мышь")));
+        assertEquals(3, index.documentFrequency(1, "дом"));
+        assertEquals(3, index.pageCount(1));
+
+        index.removePage(1, 3, List.of("дом", "кот", "сад"));
+        assertArrayEquals(new int[]{1}, index.findPages(1, List.of("дом", "кот")));
+        assertArrayEquals(new int[]{4}, index.findPages(2, List.of("дом", "кот")));
+    }
+
+    private static int[] randomSorted(Random random, int size, int bound) {
+        return random.ints(size, 1, bound).sorted().distinct().toArray();
+    }
+}
@@ -0,0 +1,106 @@
+package ru.tyabutov.searchengine.index;
+
+import org.junit.jupiter.api.Test;
+import ru.tyabutov.searchengine.config.SearchSettings;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MaxScoreEvaluatorTest {
+    private static final int SITE_ID = 1;
+    private static final List<String> LEMMAS = List.of("дом", "кот", "сад", "лес");
+
+    @Test
+    void matchesBruteForceTopK() {
+        Scorer scorer = new Bm25Scorer(1.2f, 0.75f);
+        for (long seed = 1; seed <= 20; seed++) {
+            InvertedIndex index = randomIndex(new Random(seed), 2_000);
+            int[] candidates = index.findPages(SITE_ID, List.of("дом"));
+            int k = 1 + (int) (seed % 25);
+
+            TopK expected = bruteForce(index.rankingView(SITE_ID, LEMMAS), candidates, scorer, k);
+            TopK actual = new TopK(k);
+            int pruned = MaxScoreEvaluator.evaluate(index.rankingView(SITE_ID, LEMMAS), candidates, scorer, actual);
+
+            assertArrayEquals(expected.sortedScores(), actual.sortedScores(), 1e-4f, "seed " + seed);
+            assertTrue(pruned > 0, "seed " + seed);
+        }
+    }
+
+    @Test
+    void usesPassedDocumentFrequencies() {
+        InvertedIndex index = randomIndex(new Random(7), 500);
+        int[] candidates = index.findPages(SITE_ID, List.of("дом"));
+        Scorer scorer = new Bm25Scorer(1.2f, 0.75f);
+        int[] frequencies = {5_000, 400, 300, 200};
+
+        TopK local = new TopK(10);
+        MaxScoreEvaluator.evaluate(index.rankingView(SITE_ID, LEMMAS), candidates, scorer, local);
+        TopK global = new TopK(10);
+        MaxScoreEvaluator.evaluate(index.rankingView(SITE_ID, LEMMAS), frequencies, 10_000, candidates,
+                scorer, global);
+
+        RankingView view = index.rankingView(SITE_ID, LEMMAS);
+        double averagePageLength = view.totalPageLength() / view.pageCount();
+        Scorer.TermScorer[] termScorers = new Scorer.TermScorer[LEMMAS.size()];
+        for (int term = 0; term < termScorers.length; term++) {
+            termScorers[term] = scorer.termScorer(frequencies[term], 10_000, averagePageLength);
+        }
+        int best = global.sortedIds()[0];
+        float expected = 0;
+        for (int term = 0; term < termScorers.length; term++) {
+            expected += termScorers[term].score(view.rank(term, best), view.pageLength(best));
+        }
+        assertEquals(expected, global.sortedScores()[0], 1e-4f);
+        assertNotEquals(local.sortedScores()[0], global.sortedScores()[0]);
+    }
+
+    @Test
+    void emptyInputsScoreNothing() {
+        InvertedIndex index = randomIndex(new Random(3), 10);
+        TopK topK = new TopK(5);
+        assertEquals(0, MaxScoreEvaluator.evaluate(index.rankingView(SITE_ID, LEMMAS), new int[0],
+                new RankSumScorer(), topK));
+        assertEquals(0, topK.size());
+    }
+
+    /**
+     * "дом" есть почти на всех страницах, остальные леммы встречаются реже и с большим разбросом рангов.
+     */
+    private static InvertedIndex randomIndex(Random random, int pages) {
+        InvertedIndex index = new InvertedIndex(null, new SearchSettings());
+        double[] shares = {0.9, 0.3, 0.1, 0.02};
+        for (int pageId = 1; pageId <= pages; pageId++) {
+            Map<String, Float> ranks = new HashMap<>();
+            for (int term = 0; term < LEMMAS.size(); term++) {
+                if (random.nextDouble() < shares[term]) {
+                    ranks.put(LEMMAS.get(term), 1 + random.nextInt(20) * random.nextFloat());
+                }
+            }
+            ranks.put("прочее", 1 + random.nextFloat() * 50);
+            index.addPage(SITE_ID, pageId, ranks);
+        }
+        return index;
+    }
+
+    private static TopK bruteForce(RankingView view, int[] candidates, Scorer scorer, int k) {
+        double averagePageLength = view.totalPageLength() / view.pageCount();
+        Scorer.TermScorer[] termScorers = new Scorer.TermScorer[view.termCount()];
+        for (int term = 0; term < termScorers.length; term++) {
+            termScorers[term] = scorer.termScorer(view.documentFrequency(term), view.pageCount(), averagePageLength);
+        }
+        TopK topK = new TopK(k);
+        for (int pageId : candidates) {
+            float score = 0;
+            for (int term = 0; term < termScorers.length; term++) {
+                score += termScorers[term].score(view.rank(term, pageId), view.pageLength(pageId));
+            }
+            topK.offer(pageId, score);
+        }
+        return topK;
+    }
+}
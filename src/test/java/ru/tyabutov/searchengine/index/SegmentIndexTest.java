@@ -0,0 +1,103 @@
+package ru.tyabutov.searchengine.index;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.tyabutov.searchengine.config.SearchSettings;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentIndexTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void segmentRoundTrip() throws Exception {
+        IndexSegment segment;
+        try (SegmentWriter writer = new SegmentWriter(directory.resolve("site-1.seg"), 1)) {
+            writer.startLemma(bytes("дом"));
+            writer.addPosting(3, 1.5f);
+            writer.addPosting(70_000, 2);
+            writer.startLemma(bytes("кот"));
+            writer.addPosting(3, 4);
+            writer.addPage(3, 5.5f);
+            writer.addPage(70_000, 2);
+            segment = IndexSegment.open(writer.finish());
+        }
+
+        assertEquals(1, segment.siteId());
+        assertEquals(2, segment.lemmaCount());
+        assertEquals(2, segment.pageCount());
+        assertEquals(70_000, segment.maxPageId());
+        assertEquals(7.5, segment.totalPageLength(), 1e-6);
+        assertTrue(segment.find(bytes("мышь")) < 0);
+
+        int slot = segment.find(bytes("дом"));
+        assertEquals("дом", segment.lemma(slot));
+        assertEquals(2, segment.documentFrequency(slot));
+        assertEquals(2, segment.maxRank(slot));
+        IndexSegment.Cursor cursor = segment.cursor(slot);
+        assertTrue(cursor.next());
+        assertEquals(3, cursor.pageId());
+        assertEquals(1.5f, cursor.rank());
+        assertTrue(cursor.advance(70_000));
+        assertEquals(70_000, cursor.pageId());
+        assertFalse(cursor.next());
+
+        assertTrue(segment.containsPage(3));
+        assertFalse(segment.containsPage(4));
+        assertEquals(5.5f, segment.pageLength(3));
+        assertTrue(Float.isNaN(segment.pageLength(4)));
+    }
+
+    @Test
+    void intersectSkipsDeletedPages() throws Exception {
+        IndexSegment segment;
+        try (SegmentWriter writer = new SegmentWriter(directory.resolve("site-2.seg"), 2)) {
+            writer.startLemma(bytes("дом"));
+            for (int pageId = 1; pageId <= 100; pageId++) {
+                writer.addPosting(pageId, 1);
+            }
+            writer.startLemma(bytes("кот"));
+            for (int pageId = 10; pageId <= 100; pageId += 10) {
+                writer.addPosting(pageId, 1);
+            }
+            for (int pageId = 1; pageId <= 100; pageId++) {
+                writer.addPage(pageId, 1);
+            }
+            segment = IndexSegment.open(writer.finish());
+        }
+
+        int[] pages = SegmentIndex.intersect(segment, SegmentIndex.toTerms(List.of("дом", "кот")),
+                pageId -> pageId == 50);
+        assertArrayEquals(new int[]{10, 20, 30, 40, 60, 70, 80, 90, 100}, pages);
+        assertEquals(0, SegmentIndex.intersect(segment, SegmentIndex.toTerms(List.of("дом", "мышь")),
+                pageId -> false).length);
+    }
+
+    @Test
+    void detachedSiteKeepsLaterPagesInMemtable() {
+        InvertedIndex memtable = new InvertedIndex(null, new SearchSettings());
+        memtable.addPage(1, 1, Map.of("дом", 1f));
+        InvertedIndex.SiteIndex detached = memtable.detachSite(1);
+        memtable.addPage(1, 2, Map.of("дом", 2f));
+
+        assertArrayEquals(new int[]{1}, detached.findPages(List.of("дом")));
+        assertArrayEquals(new int[]{2}, memtable.findPages(1, List.of("дом")));
+
+        assertTrue(detached.removePage(1, List.of("дом")));
+        assertFalse(detached.removePage(1, List.of("дом")));
+
+        memtable.restoreSite(1, detached);
+        assertArrayEquals(new int[]{2}, memtable.findPages(1, List.of("дом")));
+        assertEquals(1, memtable.pageCount(1));
+    }
+
+    private static byte[] bytes(String lemma) {
+        return lemma.getBytes(StandardCharsets.UTF_8);
+    }
+}
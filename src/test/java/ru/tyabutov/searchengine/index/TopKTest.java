@@ -0,0 +1,43 @@
+package ru.tyabutov.searchengine.index;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TopKTest {
+
+    @Test
+    void keepsBestScoresAndBreaksTiesByPageId() {
+        TopK topK = new TopK(4);
+        topK.offer(7, 1f);
+        topK.offer(3, 2f);
+        topK.offer(9, 2f);
+        topK.offer(1, 0.5f);
+        topK.offer(5, 2f);
+        topK.offer(2, 1f);
+
+        assertArrayEquals(new int[]{3, 5, 9, 2}, topK.sortedIds());
+        assertArrayEquals(new float[]{2f, 2f, 2f, 1f}, topK.sortedScores());
+        assertEquals(1f, topK.threshold());
+    }
+
+    @Test
+    void sortsManyEqualScores() {
+        TopK topK = new TopK(100);
+        for (int id = 200; id > 0; id--) {
+            topK.offer(id, 1f);
+        }
+        int[] ids = topK.sortedIds();
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(i + 1, ids[i]);
+        }
+    }
+
+    @Test
+    void zeroCapacityAcceptsNothing() {
+        TopK topK = new TopK(0);
+        topK.offer(1, 1f);
+        assertEquals(0, topK.size());
+        assertEquals(0, topK.sortedIds().length);
+    }
+}
@@ -0,0 +1,71 @@
+package ru.tyabutov.searchengine.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CrawlCheckpointTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void resumeReturnsClaimedButNotCommittedUrls() throws Exception {
+        Path path = dir.resolve("site-1.log");
+        CrawlCheckpoint checkpoint = CrawlCheckpoint.start(path);
+        checkpoint.claimed("https://site.ru/");
+        checkpoint.claimed("https://site.ru/a");
+        checkpoint.claimed("https://site.ru/b");
+        checkpoint.done("https://site.ru/");
+        checkpoint.commit(checkpoint.drainDone());
+        checkpoint.done("https://site.ru/a");
+        checkpoint.close();
+
+        CrawlCheckpoint resumed = CrawlCheckpoint.resume(path);
+        assertEquals(List.of("https://site.ru/", "https://site.ru/a", "https://site.ru/b"),
+                resumed.getClaimedUrls());
+        assertEquals(List.of("https://site.ru/a", "https://site.ru/b"), resumed.getPendingUrls());
+        resumed.close();
+    }
+
+    @Test
+    void truncatedLastLineIsDroppedAndOverwritten() throws Exception {
+        Path path = dir.resolve("site-2.log");
+        CrawlCheckpoint checkpoint = CrawlCheckpoint.start(path);
+        checkpoint.claimed("https://site.ru/");
+        checkpoint.claimed("https://site.ru/a");
+        checkpoint.commit(List.of());
+        checkpoint.close();
+        Files.write(path, "D https://site.ru/".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        CrawlCheckpoint resumed = CrawlCheckpoint.resume(path);
+        assertEquals(List.of("https://site.ru/", "https://site.ru/a"), resumed.getPendingUrls());
+        resumed.claimed("https://site.ru/b");
+        resumed.commit(List.of("https://site.ru/"));
+        resumed.close();
+
+        assertEquals(List.of("C https://site.ru/", "C https://site.ru/a", "C https://site.ru/b", "D https://site.ru/"),
+                Files.readAllLines(path, StandardCharsets.UTF_8));
+        CrawlCheckpoint again = CrawlCheckpoint.resume(path);
+        assertEquals(List.of("https://site.ru/a", "https://site.ru/b"), again.getPendingUrls());
+        again.complete();
+        assertFalse(Files.exists(path));
+    }
+
+    @Test
+    void disabledCheckpointIgnoresMarks() {
+        CrawlCheckpoint checkpoint = CrawlCheckpoint.disabled();
+        checkpoint.claimed("https://site.ru/");
+        checkpoint.done("https://site.ru/");
+        assertFalse(checkpoint.isEnabled());
+        assertTrue(checkpoint.drainDone().isEmpty());
+        assertTrue(checkpoint.getClaimedUrls().isEmpty());
+    }
+}
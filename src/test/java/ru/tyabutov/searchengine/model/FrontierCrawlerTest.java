@@ -0,0 +1,46 @@
+package ru.tyabutov.searchengine.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrontierCrawlerTest {
+
+    @Test
+    void addToFullFrontierReturnsAfterStop() throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        FrontierCrawler crawler = new FrontierCrawler(1, 1, running);
+        crawler.add(null, "https://site.ru/a", null);
+
+        CompletableFuture<Void> blocked = CompletableFuture.runAsync(() -> {
+            try {
+                crawler.add(null, "https://site.ru/b", null);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(300);
+        assertFalse(blocked.isDone());
+
+        running.set(false);
+        blocked.get(2, TimeUnit.SECONDS);
+        assertEquals(1, crawler.frontierSize());
+    }
+
+    @Test
+    void runReturnsAfterStopWithFullFrontier() throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        FrontierCrawler crawler = new FrontierCrawler(1, 1, running);
+        crawler.add(null, "https://site.ru/a", null);
+        running.set(false);
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            crawler.run();
+            assertEquals(0, crawler.frontierSize());
+        });
+    }
+}
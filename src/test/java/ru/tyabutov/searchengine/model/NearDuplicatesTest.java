@@ -0,0 +1,59 @@
+package ru.tyabutov.searchengine.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NearDuplicatesTest {
+    private static final long PAGE = 0x5A5A_F0F0_1234_8765L;
+
+    @Test
+    void findsFingerprintsWithinDistance() {
+        NearDuplicates nearDuplicates = new NearDuplicates(3, 0);
+        assertFalse(nearDuplicates.isDuplicate(PAGE, "https://site.ru/a"));
+        assertTrue(nearDuplicates.isDuplicate(PAGE ^ 0b1011L, "https://site.ru/b"));
+        assertFalse(nearDuplicates.isDuplicate(PAGE ^ 0b11110L, "https://site.ru/c"));
+        assertEquals(1, nearDuplicates.getDuplicateCount());
+    }
+
+    @Test
+    void findsDuplicatesDifferingInEveryBlock() {
+        NearDuplicates nearDuplicates = new NearDuplicates(3, 5);
+        nearDuplicates.add(PAGE, "https://site.ru/a");
+        assertTrue(nearDuplicates.isDuplicate(PAGE ^ (1L | 1L << 20 | 1L << 63), "https://site.ru/b"));
+        assertEquals(6, nearDuplicates.getDuplicateCount());
+    }
+
+    @Test
+    void samePathIsNotItsOwnDuplicate() {
+        NearDuplicates nearDuplicates = new NearDuplicates(3, 0);
+        nearDuplicates.add(PAGE, "https://site.ru/a");
+        assertFalse(nearDuplicates.isDuplicate(PAGE, "https://site.ru/a"));
+    }
+
+    @Test
+    void reindexedPageReplacesItsFingerprint() {
+        NearDuplicates nearDuplicates = new NearDuplicates(3, 0);
+        nearDuplicates.add(PAGE, "https://site.ru/a");
+        assertFalse(nearDuplicates.isDuplicate(~PAGE, "https://site.ru/a"));
+
+        assertFalse(nearDuplicates.isDuplicate(PAGE, "https://site.ru/b"));
+        assertTrue(nearDuplicates.isDuplicate(~PAGE, "https://site.ru/c"));
+    }
+
+    @Test
+    void removedFingerprintNoLongerMatches() {
+        NearDuplicates nearDuplicates = new NearDuplicates(3, 0);
+        nearDuplicates.add(PAGE, "https://site.ru/a");
+        nearDuplicates.remove("https://site.ru/a");
+        assertFalse(nearDuplicates.isDuplicate(PAGE, "https://site.ru/b"));
+    }
+
+    @Test
+    void negativeDistanceDisablesSearch() {
+        NearDuplicates nearDuplicates = NearDuplicates.disabled();
+        nearDuplicates.add(PAGE, "https://site.ru/a");
+        assertFalse(nearDuplicates.isEnabled());
+        assertFalse(nearDuplicates.isDuplicate(PAGE, "https://site.ru/b"));
+    }
+}
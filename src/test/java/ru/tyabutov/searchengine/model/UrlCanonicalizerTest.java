@@ -0,0 +1,40 @@
+package ru.tyabutov.searchengine.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UrlCanonicalizerTest {
+    private final UrlCanonicalizer canonicalizer = new UrlCanonicalizer(List.of("utm_*", "jsessionid"));
+
+    @Test
+    void normalizesSchemeHostPortAndPath() {
+        assertEquals("https://site.ru/a/b", canonicalizer.canonicalize("HTTPS://Site.RU.:443/a/./c/../b/#top"));
+        assertEquals("http://site.ru:8080/", canonicalizer.canonicalize("http://site.ru:8080"));
+        assertEquals("http://site.ru/a", canonicalizer.canonicalize("http://site.ru//a//"));
+    }
+
+    @Test
+    void stripsTrackingParamsAndSortsQuery() {
+        assertEquals("https://site.ru/list?a=1&b=2",
+                canonicalizer.canonicalize("https://site.ru/list?b=2&utm_source=x&a=1&UTM_medium=y"));
+        assertEquals("https://site.ru/page", canonicalizer.canonicalize("https://site.ru/page?utm_campaign=z"));
+        assertEquals("https://site.ru/page", canonicalizer.canonicalize("https://site.ru/page;jsessionid=ABC"));
+    }
+
+    @Test
+    void upperCasesEscapes() {
+        assertEquals("https://site.ru/%D0%B0?q=%2F", canonicalizer.canonicalize("https://site.ru/%d0%b0?q=%2f"));
+        assertEquals("https://site.ru/a%20b", canonicalizer.canonicalize("https://site.ru/a b"));
+    }
+
+    @Test
+    void rejectsNonHttpUrls() {
+        assertNull(canonicalizer.canonicalize("mailto:info@site.ru"));
+        assertNull(canonicalizer.canonicalize("javascript:void(0)"));
+        assertNull(canonicalizer.canonicalize("/relative/path"));
+        assertNull(canonicalizer.canonicalize("http://[bad"));
+    }
+}
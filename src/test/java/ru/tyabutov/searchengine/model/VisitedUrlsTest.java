@@ -0,0 +1,100 @@
+package ru.tyabutov.searchengine.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VisitedUrlsTest {
+
+    @Test
+    void eachUrlIsClaimedOnceAcrossThreads() throws Exception {
+        VisitedUrls visitedUrls = VisitedUrls.withPersisted(List.of());
+        AtomicInteger claims = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 5_000; i++) {
+                        if (visitedUrls.claim("https://site.ru/page/" + i)) {
+                            claims.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(5_000, claims.get());
+        assertEquals(5_000, visitedUrls.size());
+        assertTrue(visitedUrls.isClaimed("https://site.ru/page/4999"));
+        assertFalse(visitedUrls.isClaimed("https://site.ru/page/5000"));
+    }
+
+    @Test
+    void persistedPathsAreConfirmedOnlyOnBloomHit() {
+        Set<String> checked = ConcurrentHashMap.newKeySet();
+        VisitedUrls visitedUrls = VisitedUrls.withBloomFilter(List.of("https://site.ru/old"), 0.01, path -> {
+            checked.add(path);
+            return path.equals("https://site.ru/old");
+        });
+
+        assertFalse(visitedUrls.claim("https://site.ru/old"));
+        assertTrue(visitedUrls.claim("https://site.ru/new"));
+        assertFalse(visitedUrls.claim("https://site.ru/new"));
+        assertTrue(checked.contains("https://site.ru/old"));
+    }
+
+    @Test
+    void persistedPathsAreClaimedWithoutCheck() {
+        VisitedUrls visitedUrls = VisitedUrls.withPersisted(List.of("https://site.ru/old"));
+        assertTrue(visitedUrls.isClaimed("https://site.ru/old"));
+        assertFalse(visitedUrls.claim("https://site.ru/old"));
+    }
+
+    @Test
+    void bloomFilterHasNoFalseNegatives() {
+        BloomFilter bloomFilter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            bloomFilter.put("https://site.ru/" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(bloomFilter.mightContain("https://site.ru/" + i));
+            if (bloomFilter.mightContain("https://other.ru/" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 300, "ложноположительных: " + falsePositives);
+    }
+
+    @Test
+    void fingerprintSetSurvivesResize() {
+        FingerprintSet set = new FingerprintSet();
+        Random random = new Random(3);
+        long[] values = new long[20_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i == 0 ? 0 : random.nextLong();
+            assertTrue(set.add(values[i]));
+        }
+        for (long value : values) {
+            assertTrue(set.contains(value));
+            assertFalse(set.add(value));
+        }
+        assertEquals(values.length, set.size());
+        assertFalse(set.contains(42));
+    }
+}
@@ -0,0 +1,112 @@
+package ru.tyabutov.searchengine.services;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.tyabutov.searchengine.config.CacheSettings;
+import ru.tyabutov.searchengine.config.CrawlerSettings;
+import ru.tyabutov.searchengine.config.SearchSettings;
+import ru.tyabutov.searchengine.config.Site;
+import ru.tyabutov.searchengine.config.SitesList;
+import ru.tyabutov.searchengine.config.TokenizerSettings;
+import ru.tyabutov.searchengine.config.UserSettings;
+import ru.tyabutov.searchengine.config.WriterSettings;
+import ru.tyabutov.searchengine.index.IndexGenerations;
+import ru.tyabutov.searchengine.index.IndexWriter;
+import ru.tyabutov.searchengine.index.InvertedIndex;
+import ru.tyabutov.searchengine.index.LemmaDictionary;
+import ru.tyabutov.searchengine.index.SegmentIndex;
+import ru.tyabutov.searchengine.model.CrawlMetrics;
+import ru.tyabutov.searchengine.model.PageEntity;
+import ru.tyabutov.searchengine.model.SiteEntity;
+import ru.tyabutov.searchengine.repositories.IndexRepository;
+import ru.tyabutov.searchengine.repositories.LemmaRepository;
+import ru.tyabutov.searchengine.repositories.PageContentRepository;
+import ru.tyabutov.searchengine.repositories.PageRepository;
+import ru.tyabutov.searchengine.repositories.SiteRepository;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class IndexingServiceImplTest {
+    private final SiteRepository siteRepository = mock(SiteRepository.class);
+    private final PageRepository pageRepository = mock(PageRepository.class);
+    private final LemmaRepository lemmaRepository = mock(LemmaRepository.class);
+    private final IndexWriter indexWriter = mock(IndexWriter.class);
+    private HttpServer server;
+    private String siteUrl;
+    private IndexingServiceImpl service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            byte[] body = "<html><head><title>Дом</title></head><body>Кот живёт в доме</body></html>"
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        siteUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        Site site = new Site();
+        site.setUrl(siteUrl);
+        site.setName("Сайт");
+        SitesList sites = new SitesList();
+        sites.setSites(List.of(site));
+        UserSettings userSettings = new UserSettings();
+        userSettings.setUser("TestBot");
+        userSettings.setReferrer("https://www.google.com");
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        service = new IndexingServiceImpl(sites, userSettings, new CrawlerSettings(), new TokenizerSettings(),
+                siteRepository, pageRepository, mock(PageContentRepository.class), lemmaRepository,
+                mock(IndexRepository.class), new InvertedIndex(null, new SearchSettings()), mock(SegmentIndex.class),
+                indexWriter, mock(LemmaDictionary.class), new IndexGenerations(), new CacheSettings(),
+                new SearchSettings(), new WriterSettings(), new CrawlMetrics(registry), registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void reindexesNonCanonicalUrlUnderStoredCanonicalPath() throws Exception {
+        SiteEntity siteEntity = new SiteEntity();
+        siteEntity.setId(1);
+        siteEntity.setUrl(siteUrl);
+        when(siteRepository.findByUrl(siteUrl)).thenReturn(siteEntity);
+        PageEntity stored = new PageEntity();
+        stored.setId(42);
+        stored.setSite(siteEntity);
+        stored.setPath(siteUrl + "/a");
+        when(pageRepository.findByPath(siteUrl + "/a")).thenReturn(stored);
+
+        Map<String, Object> response = service.indexPage("HTTP://127.0.0.1:" + server.getAddress().getPort()
+                + "/a/?utm_source=mail#top");
+
+        assertEquals("true", String.valueOf(response.get("result")));
+        verify(pageRepository).deleteByIdDirectly(42);
+        verify(lemmaRepository).decrementFrequenciesByPage(42);
+        verify(indexWriter).write(argThat(page -> page.getPath().equals(siteUrl + "/a")), any(), anyMap());
+    }
+
+    @Test
+    void rejectsNonHttpUrl() throws Exception {
+        Map<String, Object> response = service.indexPage("mailto:info@site.ru");
+
+        assertEquals("false", String.valueOf(response.get("result")));
+        verify(pageRepository, never()).findByPath(anyString());
+        verify(indexWriter, never()).write(any(), any(), anyMap());
+    }
+}